@@ -0,0 +1,219 @@
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.SoundPool;
+import android.os.Build;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Many clips packed in one file, opened once by the loadBank action and memory-mapped.
+ * A clip is addressed as bank://name/clip and backends read it through a MediaDataSource over the mapped
+ * region, so playing it opens, checks and seeks no file. Below Android 6.0, which has no MediaDataSource,
+ * the bank's descriptor stays open and backends get it with the clip's offset and length instead.
+ * Banks in assets must be stored uncompressed (aaptOptions noCompress) so they can be mapped.
+ *
+ * File layout (big endian): u32 magic "ABNK", u32 version, u32 clip count,
+ * per clip: u16 name length, UTF-8 name, u32 offset from the start of the bank, u32 length; then the clip data
+ */
+class AudioBank {
+
+    static final String SCHEME = "bank://";
+    private static final int MAGIC = 0x41424E4B;   // "ABNK"
+    private static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * One clip of a bank. Not a MediaDataSource itself so it loads on every API level,
+     * backends wrap it in one where the platform has it.
+     */
+    static final class Clip {
+        final FileDescriptor fd;            // descriptor of the whole bank file, null from Android 6.0
+        final long offset;                  // of the clip in fd
+        final int length;
+        private final ByteBuffer data;      // the clip's region of the mapping
+
+        private Clip(FileDescriptor fd, long offset, ByteBuffer data) {
+            this.fd = fd;
+            this.offset = offset;
+            this.length = data.limit();
+            this.data = data;
+        }
+
+        /**
+         * MediaDataSource.readAt over the mapping.
+         */
+        synchronized int readAt(long position, byte[] buffer, int offset, int size) {
+            if (position >= length) return -1;
+            int count = (int) Math.min(size, length - position);
+            data.position((int) position);
+            data.get(buffer, offset, count);
+            return count;
+        }
+    }
+
+    private final String path;
+    private Closeable file;                 // kept open only for the descriptor fallback before Android 6.0
+    private FileDescriptor fd;
+    private final long base;                // offset of the bank in fd, non zero inside an APK
+    private final ByteBuffer mapping;
+    private final HashMap<String, int[]> index; // clip name to {offset, length}
+
+    private AudioBank(String path, Closeable file, FileDescriptor fd, long base, ByteBuffer mapping) throws IOException {
+        this.path = path;
+        this.file = file;
+        this.fd = fd;
+        this.base = base;
+        this.mapping = mapping;
+        this.index = readIndex(mapping);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            // the mapping stays valid without the file
+            this.file = null;
+            this.fd = null;
+            file.close();
+        }
+    }
+
+    /**
+     * Map a bank file.
+     * @param path				Local path or /android_asset/ path
+     * @throws IOException		if the file cannot be mapped or is not a bank
+     */
+    static AudioBank open(Context context, String path) throws IOException {
+        if (path.startsWith("/android_asset/")) {
+            AssetFileDescriptor asset;
+            try {
+                asset = context.getAssets().openFd(path.substring(15));
+            } catch (FileNotFoundException e) {
+                throw new FileNotFoundException(path + " is missing or compressed, banks must be stored uncompressed");
+            }
+            try {
+                FileChannel channel = new FileInputStream(asset.getFileDescriptor()).getChannel();
+                return new AudioBank(path, asset, asset.getFileDescriptor(), asset.getStartOffset(),
+                        channel.map(FileChannel.MapMode.READ_ONLY, asset.getStartOffset(), asset.getLength()));
+            } catch (IOException e) {
+                asset.close();
+                throw e;
+            }
+        }
+        FileInputStream in = new FileInputStream(path);
+        try {
+            FileChannel channel = in.getChannel();
+            return new AudioBank(path, in, in.getFD(), 0, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The clip a bank:// source addresses.
+     * @throws FileNotFoundException	if the bank is not loaded or has no such clip
+     */
+    static Clip clip(Map<String, AudioBank> banks, String source) throws FileNotFoundException {
+        String path = source.substring(SCHEME.length());
+        return bank(banks, source).clip(path.substring(path.indexOf('/') + 1));
+    }
+
+    /**
+     * Load the clip a bank:// source addresses into a SoundPool, which only takes a descriptor.
+     * Once the bank's own descriptor is closed the file is opened again for the call, SoundPool keeps a duplicate.
+     */
+    static int loadSample(Context context, Map<String, AudioBank> banks, SoundPool pool, String source) throws IOException {
+        Clip clip = clip(banks, source);
+        if (clip.fd != null) return pool.load(clip.fd, clip.offset, clip.length, 1);
+        String path = bank(banks, source).path;
+        if (path.startsWith("/android_asset/")) {
+            AssetFileDescriptor asset = context.getAssets().openFd(path.substring(15));
+            try {
+                return pool.load(asset.getFileDescriptor(), clip.offset, clip.length, 1);
+            } finally {
+                asset.close();
+            }
+        }
+        FileInputStream in = new FileInputStream(path);
+        try {
+            return pool.load(in.getFD(), clip.offset, clip.length, 1);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Identity of the data a bank:// source addresses, its bank file with size and modification time
+     * and the clip's place in it, so caches keyed by source notice a bank loaded again from another file.
+     * @throws FileNotFoundException	if the bank is not loaded or has no such clip
+     */
+    static String identity(Map<String, AudioBank> banks, String source) throws FileNotFoundException {
+        Clip clip = clip(banks, source);
+        String path = bank(banks, source).path;
+        File file = new File(path);
+        String version = file.isFile() ? ":" + file.length() + ":" + file.lastModified() : "";
+        return path + version + ":" + clip.offset + ":" + clip.length;
+    }
+
+    private static AudioBank bank(Map<String, AudioBank> banks, String source) throws FileNotFoundException {
+        String path = source.substring(SCHEME.length());
+        int slash = path.indexOf('/');
+        AudioBank bank = slash > 0 ? banks.get(path.substring(0, slash)) : null;
+        if (bank == null) throw new FileNotFoundException("No bank loaded for " + source);
+        return bank;
+    }
+
+    Clip clip(String name) throws FileNotFoundException {
+        int[] entry = index.get(name);
+        if (entry == null) throw new FileNotFoundException("No clip " + name + " in bank");
+        ByteBuffer data = mapping.duplicate();
+        data.position(entry[0]);
+        data.limit(entry[0] + entry[1]);
+        return new Clip(fd, base + entry[0], data.slice());
+    }
+
+    Set<String> names() {
+        return index.keySet();
+    }
+
+    /**
+     * Close the bank's file if still open. Clips in use keep working, the mapping lives until they are gone
+     * and backends that got the descriptor hold a duplicate of it.
+     */
+    void close() throws IOException {
+        if (file != null) file.close();
+    }
+
+    private static HashMap<String, int[]> readIndex(ByteBuffer mapping) throws IOException {
+        ByteBuffer in = mapping.duplicate();
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not an audio bank");
+            if (in.getInt() != VERSION) throw new IOException("Unsupported audio bank version");
+            int count = in.getInt();
+            HashMap<String, int[]> index = new HashMap<String, int[]>(count * 2);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[in.getShort() & 0xFFFF];
+                in.get(name);
+                int offset = in.getInt();
+                int length = in.getInt();
+                if (offset < 0 || length < 0 || (long) offset + length > mapping.limit()) {
+                    throw new IOException("Clip outside of the audio bank");
+                }
+                index.put(new String(name, UTF8), new int[] { offset, length });
+            }
+            return index;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException of a truncated index
+            throw new IOException("Truncated audio bank", e);
+        }
+    }
+}
@@ -8,10 +8,14 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.media.AudioManager;
+import android.media.SoundPool;
 import android.media.AudioManager.OnAudioFocusChangeListener;
 import android.net.Uri;
 import android.os.Build;
+import android.security.NetworkSecurityPolicy;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 
 import org.apache.cordova.LOG;
@@ -20,7 +24,20 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class called by CordovaActivity to play and record audio.
@@ -36,16 +53,83 @@ import java.util.HashMap;
 public class AudioHandler extends CordovaPlugin {
 
     public static String TAG = "AudioHandler";
-    HashMap<String, AudioPlayer> players;  // Audio player object
-    ArrayList<AudioPlayer> pausedForPhone; // Audio players that were paused when phone call came in
-    ArrayList<AudioPlayer> pausedForFocus; // Audio players that were paused when focus was lost
+    ConcurrentHashMap<String, AudioPlayer> players;  // Audio player object, lookups are lock-free
+    Set<AudioPlayer> pausedForPhone;    // Audio players that were paused when phone call came in
+    Set<AudioPlayer> pausedForFocus;    // Audio players that were paused when focus was lost
     private int origVolumeStream = -1;
     private CallbackContext messageChannel;
+    private String backendType = "mediaplayer"; // MediaBackend preference: mediaplayer, mixer or fake
+    private SoftwareMixer mixer;            // Shared output of the mixer backend, created with its first voice
+    private static final int DEFAULT_PCM_CACHE_SIZE = 16; // MB
+    private PcmCache pcmCache;              // Decoded clips replayed by the mixer backend without decoding
+    private PeakExtractor peakExtractor;    // Waveform peaks of the getPeaks action, cached on disk
+    private SessionStore session;           // Players saved on pause and destroy, rebuilt by restoreSession
+    private final ConcurrentHashMap<String, AudioBank> banks = new ConcurrentHashMap<String, AudioBank>(); // Memory-mapped clip banks by name
+    private final ConcurrentHashMap<String, AudioRecorder> recorders = new ConcurrentHashMap<String, AudioRecorder>(); // Microphone streams by id
+    private static final int RECORD_AUDIO_REQUEST = 1;
+    private JSONArray pendingRecordingArgs;     // startRecording waiting for the microphone permission
+    private CallbackContext pendingRecordingContext;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    final MediaPlayerPool playerPool = new MediaPlayerPool(DEFAULT_POOL_SIZE); // Idle MediaPlayers reused by new AudioPlayers
+    private static final int PREPARE_THREADS = 3;
+    private static final long RELEASE_TIMEOUT = 1000; // msec releaseAll waits for players to finish their commands
+    private static final int DEFAULT_SAMPLE_STREAMS = 8;
+    private SamplePool samples;             // Short sound effects played through SoundPool
+    private static final int DEFAULT_CACHE_SIZE = 0;    // MB, the caching proxy is opt-in
+    private MediaCache cache;               // Chunks of remote sources kept on disk
+    private CacheProxy cacheProxy;          // Serves remote sources to MediaPlayer from cache
+    private final PlaybackQueue queue = new PlaybackQueue(this); // Gapless playlist of player ids
+    private final ArrayList<PlayerGroup> groups = new ArrayList<PlayerGroup>(); // Started together, no player in two
+    final PlaybackMetrics metrics = new PlaybackMetrics(); // Counters and latencies reported by getMetrics
+    private final ExecutorService prepareExecutor = Executors.newFixedThreadPool(PREPARE_THREADS); // Opens sources and starts async prepares
+    private static final int PROBE_THREADS = 4;
+    private final ExecutorService probeExecutor = Executors.newFixedThreadPool(PROBE_THREADS); // Reads metadata for probeMetadata
+    private MetadataIndex metadataIndex;    // Metadata of probed sources, kept across launches
+
+    // Shared native timer for position reporting and fades
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private ScheduledFuture<?> positionTask;
+    private int positionInterval = 150;     // msec between samples, 0 disables native position updates
+    static final int FADE_STEP = 10; // msec between volume steps of native fades
+    private ScheduledFuture<?> fadeTask;
+
+    // Idle eviction, players past the budget or idle for too long release their backend until used again
+    private static final int EVICTION_INTERVAL = 5000; // msec between sweeps
+    private int maxPlayers = 16;            // prepared players kept at most, 0 for no limit
+    private int idleTimeout = 60;           // sec before an idle player is demoted, 0 disables
+    private ScheduledFuture<?> evictionTask;
+
+    // Batched status events, sent as one binary message per window
+    private final StatusBatch statusBatch = new StatusBatch();
+    private int eventBatchWindow = 0;       // msec, 0 sends every status event on its own
 
     public AudioHandler() {
-        this.players = new HashMap<String, AudioPlayer>();
-        this.pausedForPhone = new ArrayList<AudioPlayer>();
-        this.pausedForFocus = new ArrayList<AudioPlayer>();
+        this.players = new ConcurrentHashMap<String, AudioPlayer>();
+        this.pausedForPhone = Collections.newSetFromMap(new ConcurrentHashMap<AudioPlayer, Boolean>());
+        this.pausedForFocus = Collections.newSetFromMap(new ConcurrentHashMap<AudioPlayer, Boolean>());
+    }
+
+    @Override
+    protected void pluginInitialize() {
+        backendType = resolveBackend(preferences.getString("MediaBackend", backendType));
+        positionInterval = preferences.getInteger("MediaPositionInterval", positionInterval);
+        eventBatchWindow = preferences.getInteger("MediaEventBatchWindow", eventBatchWindow);
+        maxPlayers = Math.max(0, preferences.getInteger("MediaMaxPlayers", maxPlayers));
+        idleTimeout = Math.max(0, preferences.getInteger("MediaIdleTimeout", idleTimeout));
+        playerPool.setMaxSize(preferences.getInteger("MediaPlayerPoolSize", DEFAULT_POOL_SIZE));
+        samples = new SamplePool(this, preferences.getInteger("MediaSampleStreams", DEFAULT_SAMPLE_STREAMS));
+        pcmCache = new PcmCache(preferences.getInteger("MediaPcmCacheSize", DEFAULT_PCM_CACHE_SIZE) * 1024L * 1024L);
+        session = new SessionStore(new File(cordova.getActivity().getFilesDir(), "media-session"));
+        metadataIndex = new MetadataIndex(new File(cordova.getActivity().getFilesDir(), "media-metadata"));
+        peakExtractor = new PeakExtractor(cordova.getActivity(), new File(cordova.getActivity().getCacheDir(), "media-peaks"), banks);
+        long cacheSize = preferences.getInteger("MediaCacheSize", DEFAULT_CACHE_SIZE) * 1024L * 1024L;
+        if (cacheSize > 0 && !localCleartextPermitted()) {
+            LOG.w(TAG, "MediaCacheSize is set but cleartext traffic to 127.0.0.1 is not permitted, streaming directly");
+        } else if (cacheSize > 0) {
+            cache = new MediaCache(new File(cordova.getActivity().getCacheDir(), "media-cache"), cacheSize);
+            cordova.getThreadPool().execute(cache::load);
+            cacheProxy = new CacheProxy(cache);
+        }
     }
 
     /**
@@ -56,10 +140,17 @@ public class AudioHandler extends CordovaPlugin {
      * @return 				A PluginResult object with a status and message.
      */
     public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
-        CordovaResourceApi resourceApi = webView.getResourceApi();
-
         if (action.equals("create")) {
-            getOrCreatePlayer(args.getString(0), FileHelper.stripFileProtocol(args.getString(1)));
+            String backend = args.isNull(3) ? null : resolveBackend(args.getString(3));
+            AudioPlayer audio = getOrCreatePlayer(args.getString(0), FileHelper.stripFileProtocol(args.getString(1)), backend);
+            JSONArray variants = args.optJSONArray(2);
+            if (variants != null && variants.length() > 0) {
+                ArrayList<String> lower = new ArrayList<String>(variants.length());
+                for (int i = 0; i < variants.length(); i++) {
+                    lower.add(FileHelper.stripFileProtocol(variants.getString(i)));
+                }
+                audio.post(() -> audio.setVariants(lower));
+            }
         }
 
         else if (action.equals("pausePlayingAudio")) {
@@ -74,11 +165,7 @@ public class AudioHandler extends CordovaPlugin {
             String one = args.getString(0);
             String target = args.getString(1);
 
-            String fileUriStr;
-            try { fileUriStr = resourceApi.remapUri(Uri.parse(target)).toString(); }
-            catch (IllegalArgumentException e) { fileUriStr = target; }
-
-            startPlayingAudio(one, FileHelper.stripFileProtocol(fileUriStr));
+            startPlayingAudio(one, FileHelper.stripFileProtocol(remapUri(target)));
             return true;
         }
 
@@ -89,32 +176,32 @@ public class AudioHandler extends CordovaPlugin {
             return true;
         }
 
-        else if (action.equals("setVolume")) {
-            String one = args.getString(0);
-            String two = args.getString(1);
+        else if (action.equals("setScrubbing")) {
+            AudioPlayer audio = this.players.get(args.getString(0));
+            boolean scrubbing = args.getBoolean(1);
+            if (audio != null) {
+                audio.post(() -> audio.setScrubbing(scrubbing));
+            }
+            return true;
+        }
 
-            cordova.getThreadPool().execute(() -> {
-                Float volume = 1f;
-                try { volume = Float.parseFloat(two); } catch (Exception e) { }
-                setVolume(one, volume);
-            });
+        else if (action.equals("setVolume")) {
+            float volume = 1f;
+            try { volume = Float.parseFloat(args.getString(1)); } catch (Exception e) { }
+            setVolume(args.getString(0), volume);
             return true;
         }
 
         //actions with specified plugin result
         else if (action.equals("getCurrentPositionAudio")) {
-            String one = args.getString(0);
-            cordova.getThreadPool().execute(() -> {
-                AudioPlayer audio = this.players.get(one);
-                if (audio == null) return;
-                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, audio.getCurrentPosition() / 1000.0f));
-            });
+            AudioPlayer audio = this.players.get(args.getString(0));
+            if (audio != null) {
+                audio.post(() -> callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, audio.getCurrentPosition() / 1000.0f)));
+            }
         }
 
         else if (action.equals("getDurationAudio")) {
-            String one = args.getString(0);
-            String two = args.getString(1);
-            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getDurationAudio(one, two)));
+            getDurationAudio(args.getString(0), args.getString(1), callbackContext);
             return true;
         }
 
@@ -124,8 +211,216 @@ public class AudioHandler extends CordovaPlugin {
             return true;
         }
 
+        else if (action.equals("setFade")) {
+            AudioPlayer audio = this.players.get(args.getString(0));
+            boolean fadeIn = args.getBoolean(1);
+            boolean fadeOut = args.getBoolean(2);
+            int fadeTime = (int) (args.getDouble(3) * 1000);
+            if (audio != null) {
+                audio.post(() -> audio.setFade(fadeIn, fadeOut, fadeTime));
+            }
+            return true;
+        }
+
+        else if (action.equals("fadeOut")) {
+            AudioPlayer audio = this.players.get(args.getString(0));
+            int fadeTime = (int) (args.getDouble(1) * 1000);
+            if (audio != null) {
+                audio.post(() -> audio.fadeOut(fadeTime));
+            }
+            return true;
+        }
+
+        else if (action.equals("crossfade")) {
+            crossfade(args.getString(0), args.getString(1), (int) (args.getDouble(2) * 1000));
+            return true;
+        }
+
+        else if (action.equals("setPositionInterval")) {
+            setPositionInterval(args.getInt(0));
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, positionInterval));
+            return true;
+        }
+
+        else if (action.equals("setEventBatching")) {
+            setEventBatching(args.getInt(0));
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, eventBatchWindow));
+            return true;
+        }
+
+        else if (action.equals("createSample")) {
+            samples.load(args.getString(0), FileHelper.stripFileProtocol(args.getString(1)), callbackContext);
+            return true;
+        }
+
+        else if (action.equals("playSample")) {
+            samples.play(args.getString(0));
+            return true;
+        }
+
+        else if (action.equals("setQueue")) {
+            JSONArray ids = args.getJSONArray(0);
+            ArrayList<String> entries = new ArrayList<String>();
+            for (int i = 0; i < ids.length(); i++) {
+                entries.add(ids.getString(i));
+            }
+            queue.setQueue(entries);
+            return true;
+        }
+
+        else if (action.equals("enqueue")) {
+            queue.enqueue(args.getString(0));
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, queue.size()));
+            return true;
+        }
+
+        else if (action.equals("skip")) {
+            queue.skip();
+            return true;
+        }
+
+        else if (action.equals("clear")) {
+            queue.clear();
+            return true;
+        }
+
+        else if (action.equals("preload")) {
+            preload(args.getJSONArray(0), callbackContext);
+            return true;
+        }
+
+        else if (action.equals("getCacheStats")) {
+            callbackContext.sendPluginResult(cache == null
+                    ? new PluginResult(PluginResult.Status.ERROR, "Media cache is disabled")
+                    : new PluginResult(PluginResult.Status.OK, cache.getStats()));
+            return true;
+        }
+
+        else if (action.equals("clearCache")) {
+            if (cache != null) {
+                cordova.getThreadPool().execute(cache::clear);
+            }
+            return true;
+        }
+
+        else if (action.equals("getPcmCacheStats")) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, pcmCache.getStats()));
+            return true;
+        }
+
+        else if (action.equals("clearPcmCache")) {
+            pcmCache.clear();
+            return true;
+        }
+
+        else if (action.equals("pinPcm")) {
+            AudioPlayer audio = this.players.get(args.getString(0));
+            if (audio != null && !pcmCache.pin(audio.getSource(), args.getBoolean(1))) {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Decoded source does not fit in the PCM cache next to the pinned clips"));
+            } else {
+                callbackContext.success();
+            }
+            return true;
+        }
+
+        else if (action.equals("getPeaks")) {
+            getPeaks(FileHelper.stripFileProtocol(remapUri(args.getString(0))), args.getInt(1), args.optInt(2, 0), callbackContext);
+            return true;
+        }
+
+        else if (action.equals("probeMetadata")) {
+            probeMetadata(args.getJSONArray(0), callbackContext);
+            return true;
+        }
+
+        else if (action.equals("loadBank")) {
+            loadBank(args.getString(0), FileHelper.stripFileProtocol(remapUri(args.getString(1))), callbackContext);
+            return true;
+        }
+
+        else if (action.equals("unloadBank")) {
+            AudioBank bank = banks.remove(args.getString(0));
+            if (bank != null) closeBank(bank);
+            return true;
+        }
+
+        else if (action.equals("startGroup")) {
+            startGroup(groupMembers(args.getJSONArray(0)), args.optBoolean(1, false));
+            return true;
+        }
+
+        else if (action.equals("pauseGroup")) {
+            group(groupMembers(args.getJSONArray(0))).pause();
+            return true;
+        }
+
+        else if (action.equals("seekGroup")) {
+            group(groupMembers(args.getJSONArray(0))).seek(args.getInt(1));
+            return true;
+        }
+
+        else if (action.equals("restoreSession")) {
+            restoreSession(callbackContext);
+            return true;
+        }
+
+        else if (action.equals("discardSession")) {
+            session.discard();
+            return true;
+        }
+
+        else if (action.equals("startRecording")) {
+            if (cordova.hasPermission(Manifest.permission.RECORD_AUDIO)) {
+                startRecording(args, callbackContext);
+            } else {
+                pendingRecordingArgs = args;
+                pendingRecordingContext = callbackContext;
+                cordova.requestPermission(this, RECORD_AUDIO_REQUEST, Manifest.permission.RECORD_AUDIO);
+            }
+            return true;
+        }
+
+        else if (action.equals("stopRecording")) {
+            stopRecording(args.getString(0), callbackContext);
+            return true;
+        }
+
+        else if (action.equals("ackRecording")) {
+            AudioRecorder recorder = recorders.get(args.getString(0));
+            if (recorder != null) {
+                recorder.acknowledge(args.getLong(1));
+            }
+            return true;
+        }
+
+        else if (action.equals("setPoolSize")) {
+            playerPool.setMaxSize(args.getInt(0));
+            return true;
+        }
+
+        else if (action.equals("getPoolStats")) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, playerPool.getStats()));
+            return true;
+        }
+
+        else if (action.equals("getMetrics")) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, getMetrics()));
+            return true;
+        }
+
+        else if (action.equals("resetMetrics")) {
+            metrics.reset();
+            return true;
+        }
+
+        else if (action.equals("batch")) {
+            batch(args.getJSONArray(0), args.optBoolean(1, false), callbackContext);
+            return true;
+        }
+
         else if (action.equals("messageChannel")) {
             messageChannel = callbackContext;
+            callbackContext.sendPluginResult(positionIntervalResult());
         }
         else return false;
 
@@ -138,21 +433,105 @@ public class AudioHandler extends CordovaPlugin {
      * Stop all audio players and recorders.
      */
     public void onDestroy() {
+        releaseAll();
+        scheduler.shutdownNow();
+        prepareExecutor.shutdownNow();
+        probeExecutor.shutdownNow();
+        if (this.cacheProxy != null) {
+            this.cacheProxy.shutdown();
+        }
+    }
+
+    /**
+     * Stop all audio players and recorders on navigate.
+     * The plugin instance stays in use, so its threads are kept for the next page.
+     */
+    @Override
+    public void onReset() {
+        releaseAll();
+    }
+
+    // Save the session, then release every player, recorder, group and bank
+    private void releaseAll() {
+        ArrayList<SessionStore.Entry> entries = snapshotPlayers();
+        cordova.getThreadPool().execute(() -> session.save(entries));
+        for (AudioRecorder recorder : recorders.values()) {
+            try {
+                recorder.stop();
+            } catch (JSONException e) {
+                LOG.e(TAG, "Failed to stop recorder " + recorder.getId(), e);
+            }
+        }
+        recorders.clear();
+        queue.clear();
+        synchronized (groups) {
+            for (PlayerGroup group : groups) group.dispose();
+            groups.clear();
+        }
+        stopPositionTicker();
+        stopFadeTicker();
+        stopEvictionTask();
+        flushStatusBatch();
         if (!players.isEmpty()) {
             onLastPlayerReleased();
         }
+        // destroyed on their own executors like any command, the shared pool and mixer are released after them
+        CountDownLatch destroyed = new CountDownLatch(this.players.size());
         for (AudioPlayer audio : this.players.values()) {
-            audio.destroy();
+            audio.post(() -> {
+                audio.destroy();
+                destroyed.countDown();
+            });
         }
         this.players.clear();
+        try {
+            if (!destroyed.await(RELEASE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                LOG.w(TAG, destroyed.getCount() + " players still busy while releasing all");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.pausedForPhone.clear();
+        this.pausedForFocus.clear();
+        this.playerPool.clear();
+        synchronized (this) {
+            if (this.mixer != null) {
+                this.mixer.release();
+                this.mixer = null;
+            }
+        }
+        this.samples.release();
+        this.pcmCache.clear();
+        for (AudioBank bank : banks.values()) {
+            closeBank(bank);
+        }
+        banks.clear();
+        if (this.cacheProxy != null) {
+            this.cacheProxy.stop();
+        }
     }
 
     /**
-     * Stop all audio players and recorders on navigate.
+     * Save the players in the background, so a restart can restore them even if the app is killed while paused.
      */
     @Override
-    public void onReset() {
-        onDestroy();
+    public void onPause(boolean multitasking) {
+        ArrayList<SessionStore.Entry> entries = snapshotPlayers();
+        cordova.getThreadPool().execute(() -> session.save(entries));
+    }
+
+    @Override
+    public void onRequestPermissionResult(int requestCode, String[] permissions, int[] grantResults) throws JSONException {
+        if (requestCode != RECORD_AUDIO_REQUEST || pendingRecordingContext == null) return;
+        CallbackContext callbackContext = pendingRecordingContext;
+        JSONArray args = pendingRecordingArgs;
+        pendingRecordingContext = null;
+        pendingRecordingArgs = null;
+        if (grantResults.length > 0 && grantResults[0] == PackageManager.PERMISSION_GRANTED) {
+            startRecording(args, callbackContext);
+        } else {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Microphone permission denied"));
+        }
     }
 
     /**
@@ -173,8 +552,7 @@ public class AudioHandler extends CordovaPlugin {
                 // Get all audio players and pause them
                 for (AudioPlayer audio : this.players.values()) {
                     if (audio.getState() == AudioPlayer.STATE.MEDIA_RUNNING.ordinal()) {
-                        this.pausedForPhone.add(audio);
-                        audio.pausePlaying();
+                        pauseFor(this.pausedForPhone, audio);
                     }
                 }
 
@@ -183,9 +561,9 @@ public class AudioHandler extends CordovaPlugin {
             // If phone idle, then resume playing those players we paused
             else if ("idle".equals(data)) {
                 for (AudioPlayer audio : this.pausedForPhone) {
-                    audio.requestPlay();
+                    this.pausedForPhone.remove(audio);
+                    audio.post(audio::requestPlay);
                 }
-                this.pausedForPhone.clear();
             }
         }
         return null;
@@ -196,30 +574,625 @@ public class AudioHandler extends CordovaPlugin {
     //--------------------------------------------------------------------------
 
     private AudioPlayer getOrCreatePlayer(String id, String file) {
+        return getOrCreatePlayer(id, file, null);
+    }
+
+    /**
+     * @param backend			Engine of a new player, null for the MediaBackend preference
+     */
+    private synchronized AudioPlayer getOrCreatePlayer(String id, String file, String backend) {
         AudioPlayer ret = players.get(id);
         if (ret == null) {
             if (players.isEmpty()) {
                 onFirstPlayerCreated();
             }
-            ret = new AudioPlayer(this, id, file);
+            ret = new AudioPlayer(this, id, file, backend);
             players.put(id, ret);
+            metrics.onPlayerCreated();
+            prepare(ret);
+            startEvictionTask();
+            if (maxPlayers > 0 && players.size() > maxPlayers) scheduler.execute(this::evictIdlePlayers);
         }
         return ret;
     }
 
+    /**
+     * Run a command on the shared native timer after a delay.
+     */
+    ScheduledFuture<?> schedule(Runnable command, long milliseconds) {
+        return scheduler.schedule(command, milliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long milliseconds) {
+        return scheduler.scheduleAtFixedRate(command, milliseconds, milliseconds, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open the source of a new or rehydrated player on the prepare threads.
+     */
+    void prepare(AudioPlayer audio) {
+        prepareExecutor.execute(audio::loadAudio);
+    }
+
+    private synchronized void startEvictionTask() {
+        if ((maxPlayers > 0 || idleTimeout > 0) && (evictionTask == null || evictionTask.isDone())) {
+            evictionTask = scheduler.scheduleWithFixedDelay(this::evictIdlePlayers, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopEvictionTask() {
+        if (evictionTask != null) {
+            evictionTask.cancel(false);
+            evictionTask = null;
+        }
+    }
+
+    /**
+     * Demote idle players, the ones unused for longer than the idle timeout and then the least recently used
+     * ones while more than maxPlayers hold a backend. Players in the queue are left alone so chaining stays gapless.
+     */
+    private void evictIdlePlayers() {
+        if (players.isEmpty()) {
+            stopEvictionTask();
+            return;
+        }
+        int hydrated = 0;
+        ArrayList<AudioPlayer> idle = new ArrayList<AudioPlayer>();
+        for (AudioPlayer audio : players.values()) {
+            if (audio.isDormant()) continue;
+            hydrated++;
+            if (audio.isIdle() && !queue.contains(audio.getId())) idle.add(audio);
+        }
+        Collections.sort(idle, (a, b) -> Long.compare(a.getLastActive(), b.getLastActive()));
+        long expired = System.nanoTime() - idleTimeout * 1000000000L;
+        int excess = maxPlayers > 0 ? hydrated - maxPlayers : 0;
+        for (AudioPlayer audio : idle) {
+            boolean stale = idleTimeout > 0 && audio.getLastActive() < expired;
+            if (!stale && excess <= 0) break;
+            excess--;
+            audio.post(audio::demote);
+        }
+    }
+
+    /**
+     * Send the waveform peaks of a source, from the disk cache or decoded on the thread pool.
+     * @param progressInterval	Msec between partial results while decoding, 0 sends only the final one
+     */
+    private void getPeaks(String source, int buckets, int progressInterval, CallbackContext callbackContext) {
+        if (buckets < 1 || buckets > PeakExtractor.MAX_BUCKETS) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Bucket count must be between 1 and " + PeakExtractor.MAX_BUCKETS));
+            return;
+        }
+        cordova.getThreadPool().execute(() -> {
+            try {
+                PeakExtractor.Peaks peaks = peakExtractor.cached(source, buckets);
+                if (peaks == null) {
+                    PeakExtractor.Progress progress = progressInterval <= 0 ? null : (partial, from, to) -> {
+                        try {
+                            PluginResult update = new PluginResult(PluginResult.Status.OK, partial.toJSON(from, to, false));
+                            update.setKeepCallback(true);
+                            callbackContext.sendPluginResult(update);
+                        } catch (JSONException e) {
+                            LOG.e(TAG, "Failed to send partial peaks", e);
+                        }
+                    };
+                    peaks = peakExtractor.extract(source, cachedUrl(source), buckets, progress, progressInterval);
+                }
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, peaks.toJSON(0, buckets, true)));
+            } catch (Exception e) {
+                LOG.e(TAG, "Failed to extract peaks of " + source, e);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Failed to decode " + source));
+            }
+        });
+    }
+
+    /**
+     * Start streaming the microphone to JavaScript, chunks arrive on the message channel.
+     * @param args				id, then options {sampleRate, channels, chunkMs, pcm, file}
+     */
+    private void startRecording(JSONArray args, CallbackContext callbackContext) throws JSONException {
+        String id = args.getString(0);
+        JSONObject options = args.optJSONObject(1);
+        if (options == null) options = new JSONObject();
+        if (recorders.containsKey(id)) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Already recording " + id));
+            return;
+        }
+        File file = null;
+        String path = options.optString("file", "");
+        if (!path.isEmpty()) {
+            file = new File(FileHelper.stripFileProtocol(path));
+            if (!file.isAbsolute()) file = new File(cordova.getActivity().getFilesDir(), path);
+        }
+        AudioRecorder recorder = new AudioRecorder(this, id, options.optInt("sampleRate", 44100), options.optInt("channels", 1),
+                Math.max(5, options.optInt("chunkMs", 20)), options.optBoolean("pcm", true), file);
+        try {
+            recorder.start();
+        } catch (IOException e) {
+            LOG.e(TAG, "Failed to start recorder " + id, e);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getMessage()));
+            return;
+        }
+        recorders.put(id, recorder);
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK));
+    }
+
+    /**
+     * Stop a recorder on the thread pool, the result holds the file, duration and the chunks skipped or lost.
+     */
+    private void stopRecording(String id, CallbackContext callbackContext) {
+        AudioRecorder recorder = recorders.remove(id);
+        if (recorder == null) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Not recording " + id));
+            return;
+        }
+        cordova.getThreadPool().execute(() -> {
+            try {
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, recorder.stop()));
+            } catch (JSONException e) {
+                LOG.e(TAG, "Failed to stop recorder " + id, e);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, "Failed to stop " + id));
+            }
+        });
+    }
+
+    /**
+     * Send the metadata of many sources without creating players, in the order given.
+     * Sources in the index are answered from it, the others are probed in parallel on the probe executor
+     * and added to the index, which is saved once all are done. A source that fails gets {src, error}.
+     */
+    private void probeMetadata(JSONArray srcs, CallbackContext callbackContext) throws JSONException {
+        int count = srcs.length();
+        String[] names = new String[count];
+        String[] sources = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = srcs.getString(i);
+            sources[i] = FileHelper.stripFileProtocol(remapUri(names[i]));
+        }
+        JSONObject[] results = new JSONObject[count];
+        AtomicInteger remaining = new AtomicInteger(count + 1); // one for the lookups
+        Runnable finish = () -> {
+            metadataIndex.save();
+            JSONArray answer = new JSONArray();
+            for (JSONObject result : results) answer.put(result);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, answer));
+        };
+        cordova.getThreadPool().execute(() -> {
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                String source = sources[i];
+                MetadataIndex.Metadata cached = metadataIndex.get(source);
+                if (cached != null) {
+                    results[i] = metadataResult(names[i], cached, null);
+                    remaining.decrementAndGet();
+                    continue;
+                }
+                probeExecutor.execute(() -> {
+                    MetadataIndex.Metadata metadata = null;
+                    String error = null;
+                    try {
+                        metadata = MetadataIndex.probe(cordova.getActivity(), banks, source, cachedUrl(source));
+                        metadataIndex.put(source, metadata);
+                    } catch (Exception e) {
+                        LOG.w(TAG, "Failed to probe " + source + ": " + e.getMessage());
+                        error = "Failed to read " + names[index];
+                    }
+                    results[index] = metadataResult(names[index], metadata, error);
+                    if (remaining.decrementAndGet() == 0) finish.run();
+                });
+            }
+            if (remaining.decrementAndGet() == 0) finish.run();
+        });
+    }
+
+    private static JSONObject metadataResult(String src, MetadataIndex.Metadata metadata, String error) {
+        try {
+            if (metadata != null) return metadata.toJSON(src);
+            JSONObject json = new JSONObject();
+            json.put("src", src);
+            json.put("error", error);
+            return json;
+        } catch (JSONException e) {
+            LOG.e(TAG, "Failed to create metadata result", e);
+            return null;
+        }
+    }
+
+    /**
+     * Map a bank on the thread pool, replacing a bank of the same name. Answers with the names of its clips.
+     */
+    private void loadBank(String name, String path, CallbackContext callbackContext) {
+        cordova.getThreadPool().execute(() -> {
+            try {
+                AudioBank bank = AudioBank.open(cordova.getActivity(), path);
+                AudioBank previous = banks.put(name, bank);
+                if (previous != null) closeBank(previous);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, new JSONArray(bank.names())));
+            } catch (IOException e) {
+                LOG.e(TAG, "Failed to load bank " + path, e);
+                callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, e.getMessage()));
+            }
+        });
+    }
+
+    private void closeBank(AudioBank bank) {
+        try {
+            bank.close();
+        } catch (IOException e) {
+            LOG.w(TAG, "Failed to close bank", e);
+        }
+    }
+
+    /**
+     * The clip of a bank:// source, for backends.
+     */
+    AudioBank.Clip bankClip(String source) throws IOException {
+        return AudioBank.clip(banks, source);
+    }
+
+    int loadBankSample(SoundPool pool, String source) throws IOException {
+        return AudioBank.loadSample(cordova.getActivity(), banks, pool, source);
+    }
+
+    private ArrayList<AudioPlayer> groupMembers(JSONArray ids) throws JSONException {
+        ArrayList<AudioPlayer> members = new ArrayList<AudioPlayer>(ids.length());
+        for (int i = 0; i < ids.length(); i++) {
+            AudioPlayer audio = this.players.get(ids.getString(i));
+            if (audio != null) members.add(audio);
+        }
+        return members;
+    }
+
+    /**
+     * Start players together once all are prepared, replacing the groups any of them belonged to.
+     * @param correctDrift		Keep members in line with the first one while they play
+     */
+    private void startGroup(ArrayList<AudioPlayer> members, boolean correctDrift) {
+        if (members.isEmpty()) return;
+        PlayerGroup group = new PlayerGroup(this, members, correctDrift);
+        synchronized (groups) {
+            for (Iterator<PlayerGroup> it = groups.iterator(); it.hasNext(); ) {
+                PlayerGroup previous = it.next();
+                for (AudioPlayer audio : members) {
+                    if (!previous.contains(audio)) continue;
+                    previous.dispose();
+                    it.remove();
+                    break;
+                }
+            }
+            groups.add(group);
+        }
+        group.start();
+        getAudioFocus();
+    }
+
+    // The started group of exactly these players, or a group only used for this command
+    private PlayerGroup group(ArrayList<AudioPlayer> members) {
+        synchronized (groups) {
+            for (PlayerGroup group : groups) {
+                if (group.isOf(members)) return group;
+            }
+        }
+        return new PlayerGroup(this, members, false);
+    }
+
+    private ArrayList<SessionStore.Entry> snapshotPlayers() {
+        ArrayList<SessionStore.Entry> entries = new ArrayList<SessionStore.Entry>(players.size());
+        for (AudioPlayer audio : players.values()) {
+            SessionStore.Entry entry = audio.snapshot();
+            if (entry != null) entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * Recreate the players of the last snapshot, all preparing at once at their saved position and volume.
+     * Nothing is started, JavaScript receives the entries and resumes the ones it wants.
+     */
+    private void restoreSession(CallbackContext callbackContext) throws JSONException {
+        JSONArray restored = new JSONArray();
+        for (SessionStore.Entry entry : session.load()) {
+            AudioPlayer audio = getOrCreatePlayer(entry.id, entry.source);
+            audio.post(() -> {
+                audio.setVolume(entry.volume);
+                audio.seekToPlaying(entry.position);
+            });
+            JSONObject json = new JSONObject();
+            json.put("id", entry.id);
+            json.put("src", entry.source);
+            json.put("position", entry.position / 1000.0);
+            json.put("volume", entry.volume);
+            json.put("state", entry.state);
+            restored.put(json);
+        }
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, restored));
+    }
+
+    // Metrics with the players counted by the backend they hold
+    private JSONObject getMetrics() throws JSONException {
+        int dormant = 0;
+        int mediaPlayers = playerPool.idleCount();
+        int mixerVoices = 0;
+        int fakePlayers = 0;
+        for (AudioPlayer audio : players.values()) {
+            PlaybackBackend backend = audio.getBackend();
+            if (backend == null) dormant++;
+            else if (backend instanceof MediaPlayerBackend) mediaPlayers++;
+            else if (backend instanceof MixerBackend) mixerVoices++;
+            else if (backend instanceof FakeBackend) fakePlayers++;
+        }
+        return metrics.toJSON(players.size(), dormant, mediaPlayers, mixerVoices, fakePlayers, pausedForPhone.size() + pausedForFocus.size());
+    }
+
+    /**
+     * New engine for an AudioPlayer, a pooled MediaPlayer unless the player or the MediaBackend preference says otherwise.
+     * The mixer backend decodes every player itself and plays them all through one AudioTrack.
+     * @param type				mediaplayer, mixer or fake, null for the MediaBackend preference
+     */
+    PlaybackBackend createBackend(String source, String type) {
+        if (type == null) type = backendType;
+        if (type.equals("fake")) {
+            return new FakeBackend(scheduler);
+        }
+        if (type.equals("mixer")) {
+            synchronized (this) {
+                if (mixer == null) {
+                    mixer = new SoftwareMixer(cordova.getContext(), scheduler);
+                }
+                return new MixerBackend(mixer, pcmCache, source);
+            }
+        }
+        return new MediaPlayerBackend(playerPool, cordova.getContext());
+    }
+
+    // Backend name as given, the mixer falls back to MediaPlayer below Android 5.0
+    private static String resolveBackend(String type) {
+        type = type.toLowerCase();
+        if (type.equals("mixer") && Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            LOG.w(TAG, "The mixer backend needs Android 5.0, using MediaPlayer");
+            return "mediaplayer";
+        }
+        return type;
+    }
+
+    /**
+     * Report to JavaScript when each of the given players is prepared.
+     * Players already prepare in parallel on the prepare executor from the moment they are created,
+     * so this only waits for them and sends one {id, ready, duration} result per player.
+     * @param ids				The ids of the audio players
+     * @param callbackContext	Receives one result per player, the last one closes the callback
+     */
+    private void preload(JSONArray ids, CallbackContext callbackContext) throws JSONException {
+        if (ids.length() == 0) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, new JSONArray()));
+            return;
+        }
+        AtomicInteger remaining = new AtomicInteger(ids.length());
+        AudioPlayer.ReadyListener listener = (audio, prepared) ->
+                sendPreloadResult(callbackContext, remaining, audio.getId(), prepared, prepared ? audio.getKnownDuration() : 0);
+        for (int i = 0; i < ids.length(); i++) {
+            String id = ids.getString(i);
+            AudioPlayer audio = this.players.get(id);
+            if (audio != null) {
+                audio.whenReady(listener);
+            } else {
+                sendPreloadResult(callbackContext, remaining, id, false, 0);
+            }
+        }
+    }
+
+    private void sendPreloadResult(CallbackContext callbackContext, AtomicInteger remaining, String id, boolean ready, float duration) {
+        JSONObject result = new JSONObject();
+        try {
+            result.put("id", id);
+            result.put("ready", ready);
+            result.put("duration", duration);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Failed to create preload result", e);
+        }
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, result);
+        pluginResult.setKeepCallback(remaining.decrementAndGet() > 0);
+        callbackContext.sendPluginResult(pluginResult);
+    }
+
+    /**
+     * Work a batch operation does on the serial executor of its player.
+     */
+    private interface PlayerCommand {
+        void apply(AudioPlayer audio);
+    }
+
+    /**
+     * One operation of a batch, resolved before anything is applied.
+     * Player commands run on the player's executor, release, crossfade and sample operations run in place.
+     */
+    private static final class BatchStep {
+        final String id;
+        final String file;                  // creates the player if set
+        final boolean play;                 // needs audio focus
+        final PlayerCommand command;
+        final Runnable local;
+
+        BatchStep(String id, String file, boolean play, PlayerCommand command, Runnable local) {
+            this.id = id;
+            this.file = file;
+            this.play = play;
+            this.command = command;
+            this.local = local;
+        }
+    }
+
+    /**
+     * Apply many player operations received in a single bridge call, in order.
+     * Each operation is {action, id, args} where action and args are those of the single exec call minus the id.
+     * @param operations		Array of operations
+     * @param atomic			Apply nothing unless every operation resolves, and run the commands of each player as one task
+     * @param callbackContext	Receives one boolean per operation, false where the player is unknown or the action unsupported
+     */
+    private void batch(JSONArray operations, boolean atomic, CallbackContext callbackContext) throws JSONException {
+        ArrayList<BatchStep> steps = new ArrayList<BatchStep>(operations.length());
+        JSONArray results = new JSONArray();
+        boolean complete = true;
+        // players created (true) or released (false) by earlier operations of the batch
+        HashMap<String, Boolean> live = new HashMap<String, Boolean>();
+        for (int i = 0; i < operations.length(); i++) {
+            BatchStep step = null;
+            try {
+                JSONObject operation = operations.getJSONObject(i);
+                JSONArray opArgs = operation.optJSONArray("args");
+                step = batchStep(operation.getString("action"), operation.getString("id"),
+                        opArgs != null ? opArgs : new JSONArray(), live);
+            } catch (JSONException e) {
+                LOG.w(TAG, "Ignoring malformed batch operation " + i + ": " + e.getMessage());
+            }
+            steps.add(step);
+            results.put(step != null);
+            complete &= step != null;
+        }
+        if (atomic && !complete) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, results));
+            return;
+        }
+
+        LinkedHashMap<AudioPlayer, ArrayList<PlayerCommand>> grouped = new LinkedHashMap<AudioPlayer, ArrayList<PlayerCommand>>();
+        boolean focus = false;
+        for (BatchStep step : steps) {
+            if (step == null) continue;
+            if (step.local != null) {
+                // keep the order with commands already collected for a player this step may release
+                postGrouped(grouped);
+                step.local.run();
+                continue;
+            }
+            AudioPlayer audio = step.file != null ? getOrCreatePlayer(step.id, step.file) : this.players.get(step.id);
+            if (audio == null) continue;
+            focus |= step.play;
+            if (!atomic) {
+                audio.post(() -> step.command.apply(audio));
+                continue;
+            }
+            ArrayList<PlayerCommand> commands = grouped.get(audio);
+            if (commands == null) {
+                commands = new ArrayList<PlayerCommand>();
+                grouped.put(audio, commands);
+            }
+            commands.add(step.command);
+        }
+        postGrouped(grouped);
+        if (focus) {
+            getAudioFocus();
+        }
+        callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, results));
+    }
+
+    // Resolve one batch operation without side effects, null if it cannot be applied
+    private BatchStep batchStep(String action, String id, JSONArray args, HashMap<String, Boolean> live) throws JSONException {
+        Boolean changed = live.get(id);
+        boolean known = changed != null ? changed : this.players.containsKey(id);
+        if (action.equals("create") || action.equals("startPlayingAudio")) {
+            String file = FileHelper.stripFileProtocol(remapUri(args.getString(0)));
+            live.put(id, true);
+            if (action.equals("create")) return new BatchStep(id, file, false, audio -> { }, null);
+            return new BatchStep(id, file, true, AudioPlayer::requestPlay, null);
+        }
+        if (action.equals("release")) {
+            if (!known && !samples.contains(id)) return null;
+            live.put(id, false);
+            return new BatchStep(id, null, false, null, () -> release(id));
+        }
+        if (!known) {
+            if (!samples.contains(id)) return null;
+            if (action.equals("playSample")) return new BatchStep(id, null, false, null, () -> samples.play(id));
+            if (action.equals("stopPlayingAudio")) return new BatchStep(id, null, false, null, () -> samples.stop(id));
+            if (action.equals("setVolume")) {
+                float volume = (float) args.getDouble(0);
+                return new BatchStep(id, null, false, null, () -> samples.setVolume(id, volume));
+            }
+            return null;
+        }
+        if (action.equals("pausePlayingAudio")) return new BatchStep(id, null, false, AudioPlayer::pausePlaying, null);
+        if (action.equals("stopPlayingAudio")) return new BatchStep(id, null, false, AudioPlayer::stopPlaying, null);
+        if (action.equals("seekToAudio")) {
+            int milliseconds = args.getInt(0);
+            return new BatchStep(id, null, false, audio -> audio.seekToPlaying(milliseconds), null);
+        }
+        if (action.equals("setScrubbing")) {
+            boolean scrubbing = args.getBoolean(0);
+            return new BatchStep(id, null, false, audio -> audio.setScrubbing(scrubbing), null);
+        }
+        if (action.equals("setVolume")) {
+            float volume = (float) args.getDouble(0);
+            return new BatchStep(id, null, false, audio -> audio.setVolume(volume), null);
+        }
+        if (action.equals("setFade")) {
+            boolean fadeIn = args.getBoolean(0);
+            boolean fadeOut = args.getBoolean(1);
+            int fadeTime = (int) (args.getDouble(2) * 1000);
+            return new BatchStep(id, null, false, audio -> audio.setFade(fadeIn, fadeOut, fadeTime), null);
+        }
+        if (action.equals("fadeOut")) {
+            int fadeTime = (int) (args.getDouble(0) * 1000);
+            return new BatchStep(id, null, false, audio -> audio.fadeOut(fadeTime), null);
+        }
+        if (action.equals("crossfade")) {
+            String toId = args.getString(0);
+            int fadeTime = (int) (args.getDouble(1) * 1000);
+            return new BatchStep(id, null, false, null, () -> crossfade(id, toId, fadeTime));
+        }
+        return null;
+    }
+
+    // Map a cordova url to the path MediaPlayer opens
+    private String remapUri(String target) {
+        try {
+            return webView.getResourceApi().remapUri(Uri.parse(target)).toString();
+        } catch (IllegalArgumentException e) {
+            return target;
+        }
+    }
+
+    private void postGrouped(LinkedHashMap<AudioPlayer, ArrayList<PlayerCommand>> grouped) {
+        for (Map.Entry<AudioPlayer, ArrayList<PlayerCommand>> entry : grouped.entrySet()) {
+            AudioPlayer audio = entry.getKey();
+            ArrayList<PlayerCommand> commands = entry.getValue();
+            audio.post(() -> {
+                for (PlayerCommand command : commands) command.apply(audio);
+            });
+        }
+        grouped.clear();
+    }
+
     /**
      * Release the audio player instance to save memory.
      * @param id				The id of the audio player
      */
     private boolean release(String id) {
-        AudioPlayer audio = players.remove(id);
-        if (audio == null) {
-            return false;
+        if (samples.unload(id)) {
+            return true;
         }
-        if (players.isEmpty()) {
-            onLastPlayerReleased();
+        queue.remove(id);
+        AudioPlayer audio;
+        synchronized (this) {
+            audio = players.remove(id);
+            if (audio == null) {
+                return false;
+            }
+            if (players.isEmpty()) {
+                onLastPlayerReleased();
+            }
         }
-        audio.destroy();
+        pausedForPhone.remove(audio);
+        pausedForFocus.remove(audio);
+        synchronized (groups) {
+            for (Iterator<PlayerGroup> it = groups.iterator(); it.hasNext(); ) {
+                PlayerGroup group = it.next();
+                if (!group.remove(audio)) continue;
+                group.dispose();
+                it.remove();
+            }
+        }
+        metrics.onPlayerReleased();
+        audio.post(audio::destroy);
         return true;
     }
 
@@ -230,7 +1203,7 @@ public class AudioHandler extends CordovaPlugin {
      */
     public void startPlayingAudio(String id, String file) {
         AudioPlayer audio = getOrCreatePlayer(id, file);
-        audio.requestPlay();
+        audio.post(audio::requestPlay);
         getAudioFocus();
     }
 
@@ -242,7 +1215,7 @@ public class AudioHandler extends CordovaPlugin {
     public void seekToAudio(String id, int milliseconds) {
         AudioPlayer audio = this.players.get(id);
         if (audio != null) {
-            audio.seekToPlaying(milliseconds);
+            audio.post(() -> audio.seekToPlaying(milliseconds));
         }
     }
 
@@ -253,7 +1226,7 @@ public class AudioHandler extends CordovaPlugin {
     public void pausePlayingAudio(String id) {
         AudioPlayer audio = this.players.get(id);
         if (audio != null) {
-            audio.pausePlaying();
+            audio.post(audio::pausePlaying);
         }
     }
 
@@ -264,46 +1237,46 @@ public class AudioHandler extends CordovaPlugin {
     public void stopPlayingAudio(String id) {
         AudioPlayer audio = this.players.get(id);
         if (audio != null) {
-            audio.stopPlaying();
+            audio.post(audio::stopPlaying);
+        } else {
+            samples.stop(id);
         }
     }
 
     /**
-     * Get current position of playback.
-     * @param id				The id of the audio player
-     * @return 					position in msec
-     */
-    public float getCurrentPositionAudio(String id) {
-        AudioPlayer audio = this.players.get(id);
-        if (audio == null) return 0;
-        return (audio.getCurrentPosition() / 1000.0f);
-    }
-
-    /**
-     * Get the duration of the audio file.
+     * Get the duration of the audio file, answered from the player's serial executor.
      * @param id				The id of the audio player
      * @param file				The name of the audio file.
-     * @return					The duration in msec.
+     * @param callbackContext	Receives the duration in seconds, 0 if not prepared yet
      */
-    public float getDurationAudio(String id, String file) {
+    public void getDurationAudio(String id, String file, CallbackContext callbackContext) {
         AudioPlayer audio = getOrCreatePlayer(id, file);
-        return audio.getDuration();
+        audio.post(() -> callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, audio.getDuration())));
     }
 
     public void pauseAllLostFocus() {
         for (AudioPlayer audio : this.players.values()) {
             if (audio.getState() == AudioPlayer.STATE.MEDIA_RUNNING.ordinal()) {
-                this.pausedForFocus.add(audio);
-                audio.pausePlaying();
+                pauseFor(this.pausedForFocus, audio);
             }
         }
     }
 
+    // Pause a player until an interruption ends, unless release removed it meanwhile, it would stay in paused forever
+    private void pauseFor(Set<AudioPlayer> paused, AudioPlayer audio) {
+        paused.add(audio);
+        if (players.get(audio.getId()) != audio) {
+            paused.remove(audio);
+            return;
+        }
+        audio.post(audio::pausePlaying);
+    }
+
     public void resumeAllGainedFocus() {
         for (AudioPlayer audio : this.pausedForFocus) {
-            audio.requestPlay();
+            this.pausedForFocus.remove(audio);
+            audio.post(audio::requestPlay);
         }
-        this.pausedForFocus.clear();
     }
 
     /**
@@ -340,10 +1313,34 @@ public class AudioHandler extends CordovaPlugin {
 
     }
 
+    /**
+     * Fade out one player while fading in and starting another.
+     * @param fromId			The id of the audio player to fade out and stop
+     * @param toId				The id of the audio player to fade in
+     * @param milliseconds		Length of the crossfade
+     */
+    public void crossfade(String fromId, String toId, int milliseconds) {
+        AudioPlayer from = this.players.get(fromId);
+        AudioPlayer to = this.players.get(toId);
+        if (from != null) {
+            from.post(() -> from.fadeOut(milliseconds));
+        }
+        if (to != null) {
+            to.post(() -> {
+                to.fadeIn(milliseconds);
+                to.requestPlay();
+            });
+            getAudioFocus();
+        }
+    }
+
     public void setVolume(String id, float volume) {
         AudioPlayer audio = this.players.get(id);
-        if (audio == null) return;
-        audio.setVolume(volume);
+        if (audio == null) {
+            samples.setVolume(id, volume);
+            return;
+        }
+        audio.post(() -> audio.setVolume(volume));
     }
 
     private void onFirstPlayerCreated() {
@@ -358,6 +1355,216 @@ public class AudioHandler extends CordovaPlugin {
         }
     }
 
+    /**
+     * Change how often running players report their position, restarting the ticker if needed.
+     * @param milliseconds		Interval between samples, 0 hands position polling back to JavaScript
+     */
+    public void setPositionInterval(int milliseconds) {
+        positionInterval = Math.max(0, milliseconds);
+        stopPositionTicker();
+        if (messageChannel != null) {
+            messageChannel.sendPluginResult(positionIntervalResult());
+        }
+        if (positionInterval > 0) {
+            onPlayerStarted();
+        }
+    }
+
+    /**
+     * Called by AudioPlayer when it enters MEDIA_RUNNING, starts the shared ticker if idle.
+     */
+    synchronized void onPlayerStarted() {
+        if (positionInterval > 0 && (positionTask == null || positionTask.isDone())) {
+            positionTask = scheduler.scheduleAtFixedRate(this::reportPositions, 0, positionInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // The proxy is plain http, the app's network security config has to allow it
+    private static boolean localCleartextPermitted() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            return NetworkSecurityPolicy.getInstance().isCleartextTrafficPermitted("127.0.0.1");
+        }
+        return true;
+    }
+
+    /**
+     * Url MediaPlayer should open for a remote http(s) source, pointing at the local caching proxy when enabled.
+     * HLS playlists are returned unchanged since their relative segment urls would not resolve through the proxy.
+     */
+    String cachedUrl(String url) {
+        if (cacheProxy == null || !(url.startsWith("http://") || url.startsWith("https://")) || url.contains(".m3u8")) {
+            return url;
+        }
+        try {
+            return cacheProxy.proxyUrl(url);
+        } catch (IOException e) {
+            LOG.e(TAG, "Failed to start caching proxy, streaming directly", e);
+            return url;
+        }
+    }
+
+    /**
+     * Called by AudioPlayer when it reached the end of its source.
+     */
+    void onPlayerCompleted(AudioPlayer audio) {
+        queue.onCompleted(audio);
+    }
+
+    /**
+     * Called by AudioPlayer when a fade may need stepping, starts the fade ticker if idle.
+     */
+    synchronized void onFadeRequested() {
+        if (fadeTask == null || fadeTask.isDone()) {
+            fadeTask = scheduler.scheduleAtFixedRate(this::stepFades, 0, FADE_STEP, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopPositionTicker() {
+        if (positionTask != null) {
+            positionTask.cancel(false);
+            positionTask = null;
+        }
+    }
+
+    private synchronized void stopFadeTicker() {
+        if (fadeTask != null) {
+            fadeTask.cancel(false);
+            fadeTask = null;
+        }
+    }
+
+    /**
+     * Sample every running player and send all changed positions as a single message.
+     * The ticker stops itself once no player is running.
+     */
+    private void reportPositions() {
+        JSONObject positions = new JSONObject();
+        boolean running = false;
+        try {
+            for (AudioPlayer audio : this.players.values()) {
+                if (audio.getState() != AudioPlayer.STATE.MEDIA_RUNNING.ordinal()) continue;
+                running = true;
+                int position = audio.samplePosition();
+                if (position < 0) continue;
+                if (eventBatchWindow > 0) {
+                    sendStatus(audio.getId(), AudioPlayer.MEDIA_POSITION, position / 1000.0f);
+                } else {
+                    positions.put(audio.getId(), position / 1000.0f);
+                }
+            }
+        } catch (Exception e) {
+            LOG.e(TAG, "Failed to sample player positions", e);
+        }
+        if (positions.length() > 0 && eventBatchWindow <= 0) {
+            metrics.onStatusEvents(positions.length());
+            sendEventMessage("positions", positions);
+        }
+        if (!running) {
+            synchronized (this) {
+                // a player may have started since it was sampled
+                for (AudioPlayer audio : this.players.values()) {
+                    if (audio.getState() == AudioPlayer.STATE.MEDIA_RUNNING.ordinal()) return;
+                }
+                stopPositionTicker();
+            }
+        }
+    }
+
+    /**
+     * Advance the volume ramp of every fading player, the ticker stops itself once no fade is left.
+     */
+    private void stepFades() {
+        boolean fading = false;
+        try {
+            for (AudioPlayer audio : this.players.values()) {
+                if (audio.needsFadeTicks()) {
+                    audio.postFadeStep();
+                    fading = true;
+                }
+            }
+        } catch (Exception e) {
+            LOG.e(TAG, "Failed to step fades", e);
+        }
+        if (!fading) {
+            synchronized (this) {
+                for (AudioPlayer audio : this.players.values()) {
+                    if (audio.needsFadeTicks()) return;
+                }
+                stopFadeTicker();
+            }
+        }
+    }
+
+    // Tells Media.js whether positions are pushed natively, sent on the message channel itself
+    private PluginResult positionIntervalResult() {
+        JSONObject message = new JSONObject();
+        try {
+            message.put("action", "positionInterval");
+            message.put("positionInterval", positionInterval);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Failed to create event message", e);
+        }
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, message);
+        pluginResult.setKeepCallback(true);
+        return pluginResult;
+    }
+
+    /**
+     * Collect status events for eventBatchWindow msec before sending them, 0 sends each event immediately.
+     * @param milliseconds		Length of the batching window
+     */
+    public void setEventBatching(int milliseconds) {
+        eventBatchWindow = Math.max(0, milliseconds);
+        if (eventBatchWindow == 0) {
+            flushStatusBatch();
+        }
+    }
+
+    /**
+     * Send a status event of a player, either on its own or as part of the current batch.
+     * @param id				The id of the audio player
+     * @param msgType			One of the AudioPlayer MEDIA_* message types
+     * @param value				Use of value is determined by msgType
+     */
+    void sendStatus(String id, int msgType, float value) {
+        metrics.onStatusEvents(1);
+        if (eventBatchWindow > 0) {
+            if (statusBatch.add(id, msgType, value)) {
+                scheduler.schedule(this::flushStatusBatch, eventBatchWindow, TimeUnit.MILLISECONDS);
+            }
+            return;
+        }
+        JSONObject statusDetails = new JSONObject();
+        try {
+            statusDetails.put("id", id);
+            statusDetails.put("msgType", msgType);
+            statusDetails.put("value", value);
+        } catch (JSONException e) {
+            LOG.e(TAG, "Failed to create status details", e);
+        }
+        sendEventMessage("status", statusDetails);
+    }
+
+    private void flushStatusBatch() {
+        byte[] batch = statusBatch.drain();
+        if (batch == null || messageChannel == null) return;
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, batch);
+        pluginResult.setKeepCallback(true);
+        metrics.onMessage();
+        messageChannel.sendPluginResult(pluginResult);
+    }
+
+    /**
+     * Send a binary message on the message channel, such as a recorder chunk.
+     */
+    void sendBinaryMessage(byte[] message) {
+        if (messageChannel == null) return;
+        PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, message);
+        pluginResult.setKeepCallback(true);
+        metrics.onMessage();
+        messageChannel.sendPluginResult(pluginResult);
+    }
+
     void sendEventMessage(String action, JSONObject actionData) {
         JSONObject message = new JSONObject();
         try {
@@ -372,6 +1579,7 @@ public class AudioHandler extends CordovaPlugin {
         PluginResult pluginResult = new PluginResult(PluginResult.Status.OK, message);
         pluginResult.setKeepCallback(true);
         if (messageChannel != null) {
+            metrics.onMessage();
             messageChannel.sendPluginResult(pluginResult);
         }
     }
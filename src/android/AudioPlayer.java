@@ -1,20 +1,23 @@
 package org.apache.cordova.media;
 
 import org.apache.cordova.LOG;
-import android.media.MediaPlayer;
-import android.media.MediaPlayer.OnCompletionListener;
-import android.media.MediaPlayer.OnErrorListener;
-import android.media.MediaPlayer.OnPreparedListener;
 import android.os.Environment;
-import android.os.PowerManager;
 
-import org.json.JSONException;
-import org.json.JSONObject;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class AudioPlayer implements OnCompletionListener, OnPreparedListener, OnErrorListener {
+/**
+ * One PlaybackBackend, a MediaPlayer unless configured otherwise, and its state.
+ * Commands from AudioHandler and backend callbacks are posted to a per player SerialExecutor, so everything
+ * except the few volatile reads used by the handler's tickers runs in order on one thread at a time.
+ */
+public class AudioPlayer implements PlaybackBackend.Listener {
     public enum STATE {
         MEDIA_NONE,
         MEDIA_PREPARED,
@@ -25,52 +28,177 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         MEDIA_ENDED
     };
 
+    /**
+     * Notified once when the player finished preparing, or failed to.
+     */
+    interface ReadyListener {
+        void onReady(AudioPlayer audio, boolean prepared);
+    }
+
     private static final String LOG_TAG = "AudioPlayer";
-    private static int MEDIA_STATE = 1;
-    private static int MEDIA_DURATION = 2;
-    private static int MEDIA_POSITION = 3;
-    private static int MEDIA_ERROR = 9;
+    static final int MEDIA_STATE = 1;
+    static final int MEDIA_DURATION = 2;
+    static final int MEDIA_POSITION = 3;
+    static final int MEDIA_FADE = 4;
+    static final int MEDIA_QUEUE = 5;
+    static final int MEDIA_BUFFER = 6;
+    static final int MEDIA_STALL = 7;
+    static final int MEDIA_VARIANT = 8;
+    static final int MEDIA_ERROR = 9;
+
+    // Values of MEDIA_FADE messages
+    private static final float FADE_DONE = 0;
+    private static final float FADE_IN = 1;
+    private static final float FADE_OUT = 2;
+    private static final int FADE_MIN_REMAINING = 200; //msec, a fade out never reaches zero so stop slightly before
+    private static final long SCRUB_SEEK_TIMEOUT = 500000000L; // nsec before a seek without completion is given up on
+    private static final int STALL_SWITCH_COUNT = 3;  // stalls within STALL_WINDOW that switch to a lower variant
+    private static final long PRELOAD_GRACE = 300000000000L; // nsec a never started player is kept prepared after its prepare was requested
+    private static final long STALL_WINDOW = 30000;   // msec
+    private static final long LONG_STALL = 5000;      // msec a single stall may last before switching
 
     private AudioHandler handler;           // The AudioHandler object
     private String id;                      // The id of this player (used to identify Media object in JavaScript)
-    private STATE state = STATE.MEDIA_NONE;
+    private final SerialExecutor commands;  // Runs this player's commands and callbacks in order
+    private volatile STATE state = STATE.MEDIA_NONE;
     private String audioFile = null;
-    private MediaPlayer player = new MediaPlayer();
+    private volatile PlaybackBackend backend; // null while dormant
+    private final String backendType;       // engine asked for at creation, null for the MediaBackend preference
     private int currentPosition = 0;
+    private int sampledPosition = 0;        // last position read by the handler's position ticker
     private float currentVolume = 1f;
-    private boolean prepared = false;
+    private volatile boolean prepared = false;
     private boolean playRequested = false; //used to determine if the song was requested to play
     private int seekOnPrepared = 0;
+    private volatile boolean destroyed = false;
+    private volatile boolean dormant = false; // backend released while idle, re-created on next use
+    private volatile long lastActive = System.nanoTime(); // of the last command
+    private volatile long prepareRequestedAt = System.nanoTime(); // of the latest prepare
+    private volatile boolean started = false; // ran at least once, preloaded players are not evicted before
+    private AudioPlayer nextPlayer = null;  // started by the backend when this one completes
+    private ArrayList<ReadyListener> readyListeners = null; // waiting for prepare to finish
+    private boolean prepareFailed = false;  // the last prepare failed, cleared when preparing again
+    private volatile int duration = 0;      // msec, known once prepared
+
+    // System.nanoTime() of pending operations measured by handler.metrics, 0 when none
+    private long preparingSince = System.nanoTime();
+    private long playRequestedAt = 0;
+    private long seekRequestedAt = 0;
+
+    // Scrub mode, at most one seek is in flight and only the latest target waits for it to complete
+    private boolean scrubbing = false;
+    private boolean scrubReporting = false; // position events come from seek completions until the final seek is done
+    private long scrubSeekAt = 0;           // System.nanoTime() of the seek in flight, 0 when none
+    private int scrubTarget = -1;           // msec waiting for the seek in flight, -1 when none
+    private int scrubLast = -1;             // msec of the latest scrub seek, sought precisely when scrubbing ends
+    private Runnable seekDone = null;       // run once the pending seek completes
+
+    // Stalls of streamed sources, repeated or long ones continue playback on the next lower bitrate variant
+    private ArrayList<String> variants = null; // the original source followed by lower bitrate variants
+    private int variant = 0;                // index in variants of the source being played
+    private int bufferedPercent = -1;
+    private long stallStartedAt = 0;        // System.nanoTime() when the current stall began, 0 when not stalled
+    private final ArrayDeque<Long> recentStalls = new ArrayDeque<Long>(); // start times within STALL_WINDOW
+
+    // Native fades, the volume applied to the player is currentVolume * fadeFactor
+    private float fadeFactor = 1f;
+    private int fadeTime = 5000;            // msec used by automatic fades
+    private volatile boolean autoFadeIn = false;  // fade in while position is below fadeTime
+    private volatile boolean autoFadeOut = false; // fade out when less than fadeTime remains
+    private int fadeInStart = 0;            // msec position where the current fade in started
+    private volatile int fadeInEnd = -1;    // msec position where the current fade in ends, -1 when not fading in
+    private int fadeOutLength = 0;          // msec
+    private volatile int fadeOutEnd = -1;   // msec position where the current fade out ends, -1 when not fading out
+    private ScheduledFuture<?> fadeOutTimer = null; // wakes the player when the automatic fade out zone begins
+    private final AtomicBoolean fadeStepPending = new AtomicBoolean(false);
+    private final Runnable fadeStep = () -> {
+        fadeStepPending.set(false);
+        stepFade();
+    };
 
     //STEP 1 - CONSTRUCT AudioPlayer with Status None, attach listeners and Load file
-    public AudioPlayer(AudioHandler handler, String id, String file) {
+    public AudioPlayer(AudioHandler handler, String id, String file, String backendType) {
         this.id = id;
         this.handler = handler;
+        this.commands = new SerialExecutor(handler.cordova.getThreadPool());
+        this.backendType = backendType;
         audioFile = file;
         //LOG.d("1 VIGIL_PLAYER_CREATED", this.audioFile);
-        player.setOnCompletionListener(this);
-        player.setOnPreparedListener(this);
-        player.setOnErrorListener(this);
-        player.setWakeMode(handler.cordova.getContext(), PowerManager.PARTIAL_WAKE_LOCK);
-        loadAudio();
+        backend = handler.createBackend(file, backendType);
+        backend.setListener(this);
+        this.applyVolume();
     }
     //STEP 2 - LoadAudio File from web or locally, and Prepare Media
-    private void loadAudio() {
+    //Runs on the handler's prepare executor, every source type prepares asynchronously
+    void loadAudio() {
         //LOG.d("2 VIGIL_PLAYER_AUDIO LOADED", this.audioFile);
-        try {
-            if (this.audioFile.contains("http://") || this.audioFile.contains("https://") || this.audioFile.contains("rtsp://")) {
-                this.player.setDataSource(this.audioFile);
-                this.player.prepareAsync();
-            } else {
-                loadLocalAudioFile();
-                this.player.prepare();
+        synchronized (this) {
+            // demoted while waiting for the prepare thread, rehydrate prepares again
+            if (this.destroyed || this.dormant) return;
+            this.prepareFailed = false;
+            this.prepareRequestedAt = System.nanoTime();
+            long start = System.nanoTime();
+            try {
+                if (this.audioFile.contains("http://") || this.audioFile.contains("https://") || this.audioFile.contains("rtsp://")) {
+                    this.backend.setDataSource(this.handler.cachedUrl(this.audioFile));
+                } else if (this.audioFile.startsWith(AudioBank.SCHEME)) {
+                    this.backend.setDataSource(this.handler.bankClip(this.audioFile));
+                } else {
+                    loadLocalAudioFile();
+                }
+                this.backend.prepareAsync();
+                this.handler.metrics.load.record(start);
+                return;
+            }
+            catch (Exception e) {
+                LOG.w(LOG_TAG, "Failed to open " + this.audioFile, e);
+            }
+        }
+        // listeners run without this player's monitor, they may take locks of their own
+        this.handler.metrics.onError(1);
+        sendStatusChange(MEDIA_ERROR, (float) 1);
+        notifyReady(false);
+    }
+    /**
+     * Run a command on this player's serial executor, every public command must go through here.
+     */
+    void post(Runnable command) {
+        this.lastActive = System.nanoTime();
+        this.commands.execute(command);
+    }
+    /**
+     * Call listener once this player is prepared, immediately if it already is or its prepare failed.
+     * A dormant player is re-prepared for it.
+     */
+    void whenReady(ReadyListener listener) {
+        boolean ready;
+        synchronized (this) {
+            ready = this.prepared;
+            if (!ready && !this.prepareFailed && !this.destroyed) {
+                if (this.dormant) post(this::rehydrate);
+                if (this.readyListeners == null) this.readyListeners = new ArrayList<ReadyListener>();
+                this.readyListeners.add(listener);
+                return;
             }
         }
-        catch (Exception e) { sendStatusChange(MEDIA_ERROR, (float) 1); }
+        listener.onReady(this, ready);
+    }
+    private void notifyReady(boolean prepared) {
+        ArrayList<ReadyListener> listeners;
+        synchronized (this) {
+            if (!prepared) this.prepareFailed = true;
+            listeners = this.readyListeners;
+            this.readyListeners = null;
+        }
+        if (listeners == null) return;
+        for (ReadyListener listener : listeners) listener.onReady(this, prepared);
     }
     //Register for outside requests
     public void requestPlay() {
         //LOG.d("VIGIL_PLAYER_PLAY_REQUESTED", this.audioFile);
+        if (this.destroyed) return;
+        this.rehydrate();
+        if (!playRequested) playRequestedAt = System.nanoTime();
         playRequested = true;
         this.setState(STATE.MEDIA_PREPARED);
         executePlay();
@@ -80,63 +208,342 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         if (!playRequested) return;
         if (!prepared) return;
 
-        this.player.start();
+        if (fadeInEnd >= 0 || autoFadeIn) this.stepFade();
+        this.backend.start();
+        this.handler.metrics.start.record(playRequestedAt);
         this.setState(STATE.MEDIA_RUNNING);
+        this.armFades();
         playRequested = false; //once I play, I remove the play request
         //LOG.d("VIGIL_PLAYER_RUNNING", this.audioFile);
     }
     ////////////BEGIN LISTENERS////////////
     //STEP 3 - When Song is Prepared it checks if can play and execPlay
     @Override
-    public void onPrepared(MediaPlayer player) {
-        prepared = true;
+    public void onPrepared() {
+        post(this::handlePrepared);
+    }
+    @Override
+    public void onCompletion() {
+        post(this::handleCompletion);
+    }
+    @Override
+    public void onError(int arg1, int arg2) {
+        //LOG.d("VIGIL_PLAYER_ERROR", arg1 + ", " + arg2);
+        post(() -> handleError(arg1));
+    }
+    @Override
+    public void onSeekComplete() {
+        post(this::handleSeekComplete);
+    }
+    @Override
+    public void onBufferingUpdate(int percent) {
+        post(() -> handleBufferingUpdate(percent));
+    }
+    @Override
+    public void onStall(boolean stalled) {
+        post(() -> handleStall(stalled));
+    }
+    private void handlePrepared() {
+        if (this.destroyed || this.dormant) return;
+        synchronized (this) {
+            prepared = true;
+        }
+        this.handler.metrics.prepare.record(preparingSince);
         //LOG.d("3 VIGIL_PLAYER_PREPARED SET TO TRUE", this.audioFile);
         this.seekToPlaying(seekOnPrepared);
         seekOnPrepared = 0;
         this.getDuration();
+        if (this.nextPlayer != null) this.setNext(this.nextPlayer); // re-chain after a variant switch
         this.executePlay();
+        this.endStall();
+        this.notifyReady(true);
     }
-    @Override
-    public void onCompletion(MediaPlayer player) {
+    private void handleCompletion() {
+        if (this.destroyed || this.dormant) return;
+        AudioPlayer next;
+        synchronized (this) {
+            next = this.nextPlayer;
+            this.nextPlayer = null;
+        }
         this.setState(STATE.MEDIA_ENDED);
+        if (next != null) next.post(next::onStartedAsNext);
+        this.handler.onPlayerCompleted(this);
     }
-    @Override
-    public boolean onError(MediaPlayer player, int arg1, int arg2) {
-        //LOG.d("VIGIL_PLAYER_ERROR", arg1 + ", " + arg2);
-        sendStatusChange(MEDIA_ERROR, (float) arg1);
-        return true; //so player not stops
+    private void handleError(int what) {
+        if (this.destroyed || this.dormant) return;
+        this.handler.metrics.onError(what);
+        sendStatusChange(MEDIA_ERROR, (float) what);
+        if (!prepared) notifyReady(false);
+    }
+    private void handleSeekComplete() {
+        if (this.seekRequestedAt != 0) {
+            this.handler.metrics.seek.record(this.seekRequestedAt);
+            this.seekRequestedAt = 0;
+        }
+        this.scrubSeekAt = 0;
+        if (this.seekDone != null) {
+            Runnable done = this.seekDone;
+            this.seekDone = null;
+            done.run();
+        }
+        if (!this.scrubReporting || !this.prepared || this.destroyed) return;
+        sendStatusChange(MEDIA_POSITION, (this.backend.getCurrentPosition() / 1000.0f));
+        if (this.scrubTarget >= 0) {
+            int target = this.scrubTarget;
+            this.scrubTarget = -1;
+            this.scrubSeek(target, this.scrubbing);
+        } else if (!this.scrubbing) {
+            this.scrubReporting = false;
+        }
+    }
+    private void handleBufferingUpdate(int percent) {
+        if (this.destroyed || this.dormant || percent == this.bufferedPercent) return;
+        this.bufferedPercent = percent;
+        sendStatusChange(MEDIA_BUFFER, (float) percent);
+    }
+    private void handleStall(boolean stalled) {
+        if (this.destroyed || this.dormant) return;
+        if (!stalled) {
+            this.endStall();
+            return;
+        }
+        if (this.stallStartedAt != 0) return;
+        long now = System.nanoTime();
+        this.stallStartedAt = now;
+        this.handler.metrics.onStall();
+        sendStatusChange(MEDIA_STALL, 1f);
+        this.recentStalls.addLast(now);
+        while (now - this.recentStalls.peekFirst() > STALL_WINDOW * 1000000L) this.recentStalls.pollFirst();
+        if (this.recentStalls.size() >= STALL_SWITCH_COUNT) {
+            this.switchVariant();
+        } else {
+            this.handler.schedule(() -> post(() -> {
+                if (this.stallStartedAt == now) this.switchVariant();
+            }), LONG_STALL);
+        }
+    }
+    private void endStall() {
+        if (this.stallStartedAt == 0) return;
+        this.stallStartedAt = 0;
+        sendStatusChange(MEDIA_STALL, 0f);
     }
     ////////////END LISTENERS////////////
-    public void destroy() {
-        if (this.state == STATE.MEDIA_RUNNING) this.player.pause();
-        player.release();
+    /**
+     * Chain a prepared player to start gaplessly when this one completes, null removes the chain.
+     * @return 					true if the chain was set
+     */
+    synchronized boolean setNext(AudioPlayer next) {
+        if (this.destroyed || !this.prepared) return false;
+        try {
+            this.backend.setNext(next == null ? null : next.backend);
+        } catch (Exception e) {
+            LOG.e(LOG_TAG, "Failed to set next player", e);
+            this.nextPlayer = null;
+            return false;
+        }
+        this.nextPlayer = next;
+        return true;
+    }
+    // The previous player completed and its backend started this one
+    private void onStartedAsNext() {
+        this.playRequested = false;
+        this.setState(STATE.MEDIA_RUNNING);
+        this.armFades();
+    }
+    public synchronized void destroy() {
+        this.destroyed = true;
+        if (this.fadeOutTimer != null) this.fadeOutTimer.cancel(false);
+        if (this.dormant) return;
+        if (this.state == STATE.MEDIA_RUNNING) this.backend.pause();
+        this.backend.release();
+        this.readyListeners = null;
+        // commands still queued must not reach the released backend, a pooled MediaPlayer may already serve another player
+        this.prepared = false;
+        this.state = STATE.MEDIA_NONE;
+    }
+
+    /**
+     * Lower bitrate alternates of the source, best first, switched to natively when the stream keeps stalling.
+     */
+    void setVariants(List<String> lower) {
+        this.variants = new ArrayList<String>(lower.size() + 1);
+        this.variants.add(this.audioFile);
+        this.variants.addAll(lower);
+        this.variant = 0;
+    }
+    // Continue on the next lower variant at the current position, the stall ends once it plays
+    private void switchVariant() {
+        if (this.variants == null || this.variant + 1 >= this.variants.size()) return;
+        if (!this.prepared || this.destroyed || this.state != STATE.MEDIA_RUNNING) return;
+        int position = this.backend.getCurrentPosition();
+        this.variant++;
+        this.recentStalls.clear();
+        LOG.d(LOG_TAG, "Switching " + this.id + " to variant " + this.variant + " after stalls");
+        synchronized (this) {
+            this.prepared = false;
+            this.backend.release();
+            this.audioFile = this.variants.get(this.variant);
+            this.backend = this.handler.createBackend(this.audioFile, this.backendType);
+            this.backend.setListener(this);
+        }
+        this.seekOnPrepared = position;
+        this.playRequested = true;
+        this.playRequestedAt = this.preparingSince = System.nanoTime();
+        this.bufferedPercent = -1;
+        this.applyVolume();
+        this.handler.metrics.onVariantSwitch();
+        sendStatusChange(MEDIA_VARIANT, (float) this.variant);
+        this.handler.prepare(this);
+    }
+
+    /**
+     * Record of this player for the session snapshot, read on the UI thread while commands may be running.
+     * @return 					null once destroyed
+     */
+    SessionStore.Entry snapshot() {
+        if (this.destroyed) return null;
+        int position = this.seekOnPrepared;
+        PlaybackBackend current = this.backend;
+        if (this.prepared && current != null) {
+            try {
+                position = current.getCurrentPosition();
+            } catch (IllegalStateException e) {
+                // released meanwhile, keep the pending position
+            }
+        }
+        String source = this.variants == null ? this.audioFile : this.variants.get(0);
+        return new SessionStore.Entry(this.id, source, position, this.currentVolume, this.state.ordinal());
+    }
+
+    /**
+     * Whether the handler may demote this player: prepared, not playing or waiting to play, not chained,
+     * and not preloaded within PRELOAD_GRACE without having been started yet.
+     */
+    boolean isIdle() {
+        if (this.destroyed || this.dormant || !this.prepared || this.nextPlayer != null || this.scrubReporting) return false;
+        if (!this.started && System.nanoTime() - this.prepareRequestedAt < PRELOAD_GRACE) return false;
+        STATE current = this.state;
+        return current == STATE.MEDIA_NONE || current == STATE.MEDIA_PAUSED
+                || current == STATE.MEDIA_STOPPED || current == STATE.MEDIA_ENDED;
+    }
+    boolean isDestroyed() {
+        return this.destroyed;
+    }
+    boolean isDormant() {
+        return this.dormant;
+    }
+    PlaybackBackend getBackend() {
+        return this.backend;
+    }
+    long getLastActive() {
+        return this.lastActive;
+    }
+    /**
+     * Release the backend of an idle player, keeping only its source, position, volume and fades.
+     * JavaScript keeps seeing the same state, the next play re-prepares it at the same position.
+     */
+    void demote() {
+        if (!isIdle()) return;
+        boolean rewound = this.state == STATE.MEDIA_STOPPED || this.state == STATE.MEDIA_ENDED;
+        int position = rewound ? 0 : this.backend.getCurrentPosition();
+        synchronized (this) {
+            this.prepared = false;
+            this.dormant = true;
+            this.backend.release();
+            this.backend = null;
+        }
+        this.seekOnPrepared = position;
+        this.handler.metrics.onPlayerDemoted();
+    }
+    // Create and prepare a new backend for a dormant player, seeking back to where it was on prepare
+    private void rehydrate() {
+        if (!this.dormant || this.destroyed) return;
+        synchronized (this) {
+            this.backend = this.handler.createBackend(this.audioFile, this.backendType);
+            this.backend.setListener(this);
+            this.dormant = false;
+        }
+        this.preparingSince = System.nanoTime();
+        this.applyVolume();
+        this.handler.metrics.onPlayerRehydrated();
+        this.handler.prepare(this);
     }
 
     //STEP 3a - If there is a seek request, buffer it or do seek
     public void seekToPlaying(int milliseconds) {
         //LOG.d("3A VIGIL_PLAYER_AUDIO SEEK TO PLAY", this.audioFile + String.valueOf(milliseconds));
-        if (prepared) {
-            this.player.seekTo(milliseconds);
+        if (prepared && scrubbing) {
+            this.scrubLast = milliseconds;
+            if (this.scrubSeekAt != 0 && System.nanoTime() - this.scrubSeekAt < SCRUB_SEEK_TIMEOUT) {
+                this.scrubTarget = milliseconds;
+            } else {
+                this.scrubSeek(milliseconds, true);
+            }
+        } else if (prepared) {
+            if (this.seekRequestedAt == 0) this.seekRequestedAt = System.nanoTime();
+            this.backend.seekTo(milliseconds);
             sendStatusChange(MEDIA_POSITION, (milliseconds / 1000.0f));
+            if (autoFadeIn || autoFadeOut) this.armFades();
         } else this.seekOnPrepared = milliseconds;
     }
+    /**
+     * Enter or leave scrub mode. While scrubbing seeks are fast, coalesced to the latest target and
+     * positions are only reported once a seek completed. Leaving seeks precisely to the last target.
+     */
+    public void setScrubbing(boolean scrubbing) {
+        if (scrubbing == this.scrubbing) return;
+        this.scrubbing = scrubbing;
+        if (scrubbing) {
+            this.scrubReporting = true;
+            this.scrubLast = -1;
+            return;
+        }
+        int target = this.scrubLast;
+        this.scrubLast = -1;
+        if (target < 0 || !prepared) {
+            this.scrubTarget = -1;
+            this.scrubReporting = this.scrubSeekAt != 0;
+        } else if (this.scrubSeekAt != 0) {
+            this.scrubTarget = target; // sought precisely once the fast seek completes
+        } else {
+            this.scrubSeek(target, false);
+        }
+    }
+    private void scrubSeek(int milliseconds, boolean fast) {
+        this.scrubSeekAt = System.nanoTime();
+        if (this.seekRequestedAt == 0) this.seekRequestedAt = this.scrubSeekAt;
+        this.backend.seekTo(milliseconds, fast);
+    }
+    /**
+     * Seek and run done once the seek completed, right away when not prepared since the seek happens on prepare.
+     */
+    void seekThen(int milliseconds, Runnable done) {
+        if (!prepared) {
+            this.seekOnPrepared = milliseconds;
+            done.run();
+            return;
+        }
+        this.seekDone = done;
+        this.seekToPlaying(milliseconds);
+    }
     public void pausePlaying() {
         if (this.state != STATE.MEDIA_RUNNING) return;
-        this.player.pause();
+        this.backend.pause();
         this.setState(STATE.MEDIA_PAUSED);
     }
     public void stopPlaying() {
         if (!(this.state == STATE.MEDIA_RUNNING) || (this.state == STATE.MEDIA_PAUSED)) return;
-        this.player.pause();
-        this.player.seekTo(0);
+        this.backend.pause();
+        this.backend.seekTo(0);
+        this.clearFades();
         this.setState(STATE.MEDIA_STOPPED);
     }
     public long getCurrentPosition() {
-        if (!prepared) return 0;
+        if (!prepared) return dormant ? this.seekOnPrepared : 0;
         switch (this.state){
             case MEDIA_RUNNING:
             case MEDIA_PAUSED:
-                int curPos = this.player.getCurrentPosition();
+                int curPos = this.backend.getCurrentPosition();
                 if (curPos != this.currentPosition) {
                     this.currentPosition = curPos;
                     sendStatusChange(MEDIA_POSITION, (curPos / 1000.0f));
@@ -147,15 +554,60 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
     }
     public float getDuration() {
         //LOG.d("VIGIL_PLAYER_DURATION REQUESTED", this.audioFile);
-        if (!prepared) return 0f;
+        if (!prepared) return dormant ? this.duration / 1000.0f : 0f;
         try {
-            float duration = (this.player.getDuration() / 1000.0f);
+            this.duration = this.backend.getDuration();
+            float duration = (this.duration / 1000.0f);
             sendStatusChange(MEDIA_DURATION, duration);
             return duration;
         } catch (Exception e) {LOG.d("VIGIL_PLAYER_DURATION_ERROR", e.getMessage()); }
         return 0f;
     }
 
+    /**
+     * Read the position for the native position ticker without emitting a status event.
+     * @return 					position in msec, or -1 when it has not changed since the last sample
+     */
+    int samplePosition() {
+        if (!prepared || destroyed || scrubReporting || this.state != STATE.MEDIA_RUNNING) return -1;
+        int curPos;
+        try {
+            curPos = this.backend.getCurrentPosition();
+        } catch (IllegalStateException e) {
+            return -1; // destroyed while sampling
+        }
+        if (curPos == this.sampledPosition) return -1;
+        this.sampledPosition = curPos;
+        return curPos;
+    }
+    /**
+     * Media time at System.nanoTime() nanoTime for group drift checks, read like samplePosition.
+     * @return 					usec, or -1 when not running
+     */
+    long getMediaTimeUs(long nanoTime) {
+        if (!prepared || destroyed || this.state != STATE.MEDIA_RUNNING) return -1;
+        try {
+            return this.backend.getMediaTimeUs(nanoTime);
+        } catch (IllegalStateException e) {
+            return -1; // destroyed while sampling
+        }
+    }
+    /**
+     * Duration in seconds as of the last prepare, safe to read from any thread.
+     */
+    float getKnownDuration() {
+        return this.duration / 1000.0f;
+    }
+
+    public String getId() {
+        return this.id;
+    }
+    /**
+     * Resolved source path, the key of this player's source in the PCM cache.
+     */
+    String getSource() {
+        return this.audioFile;
+    }
     public int getState() {
         return this.state.ordinal();
     }
@@ -164,40 +616,181 @@ public class AudioPlayer implements OnCompletionListener, OnPreparedListener, On
         //LOG.d("VIGIL_PLAYER_SETSTATE", this.audioFile + STATE.values()[MEDIA_STATE].toString());
         sendStatusChange(MEDIA_STATE, (float)state.ordinal());
         this.state = state;
+        if (state == STATE.MEDIA_RUNNING) {
+            this.started = true;
+            this.handler.onPlayerStarted();
+        }
     }
     public void setVolume(float volume) {
         if (volume == this.currentVolume) return;
         this.currentVolume = volume;
-        this.player.setVolume(volume, volume);
+        this.applyVolume();
+    }
+    private void applyVolume() {
+        if (this.dormant || this.destroyed) return;
+        float volume = this.currentVolume * this.fadeFactor;
+        this.backend.setVolume(volume);
+    }
+
+    //////////// NATIVE FADES ////////////
+    /**
+     * Configure automatic fades, same zones as the JavaScript fades in Media.js.
+     * @param fadeIn			Fade in while the position is below fadeTime
+     * @param fadeOut			Fade out and stop when less than fadeTime remains
+     * @param fadeTime			Length of automatic fades in msec
+     */
+    public void setFade(boolean fadeIn, boolean fadeOut, int fadeTime) {
+        this.autoFadeIn = fadeIn;
+        this.autoFadeOut = fadeOut;
+        if (fadeTime > 0) this.fadeTime = fadeTime;
+        this.armFades();
+    }
+    /**
+     * Fade in from the current position, used by crossfades before the player is started.
+     * @param milliseconds		Length of the fade
+     */
+    public void fadeIn(int milliseconds) {
+        this.fadeInStart = this.prepared ? this.backend.getCurrentPosition() : this.seekOnPrepared;
+        this.fadeInEnd = this.fadeInStart + Math.max(milliseconds, 1);
+        this.setFadeFactor(0f);
+        this.handler.onFadeRequested();
+    }
+    /**
+     * Forced fade out from the current position, the player is stopped when it finishes.
+     * @param milliseconds		Length of the fade, 0 or less cancels a running forced fade out
+     */
+    public void fadeOut(int milliseconds) {
+        if (milliseconds <= 0) {
+            if (this.fadeOutEnd < 0) return;
+            this.fadeOutEnd = -1;
+            this.setFadeFactor(1f);
+            sendStatusChange(MEDIA_FADE, FADE_DONE);
+            return;
+        }
+        if (!this.prepared || this.state != STATE.MEDIA_RUNNING) {
+            this.clearFades();
+            this.stopPlaying();
+            return;
+        }
+        this.startFadeOut(this.backend.getCurrentPosition() + milliseconds, milliseconds);
+    }
+    /**
+     * Whether the handler's fade ticker still has work for this player, only while a fade is running.
+     */
+    boolean needsFadeTicks() {
+        if (!this.prepared || this.state != STATE.MEDIA_RUNNING) return false;
+        return this.fadeInEnd >= 0 || this.fadeOutEnd >= 0;
+    }
+    /**
+     * Start the automatic fades due at the current position and, while no fade out runs, set a one-shot timer
+     * for where the automatic fade out zone begins. Called whenever playback starts or jumps.
+     */
+    private void armFades() {
+        if (this.fadeOutTimer != null) {
+            this.fadeOutTimer.cancel(false);
+            this.fadeOutTimer = null;
+        }
+        if (!this.prepared || this.destroyed || this.state != STATE.MEDIA_RUNNING) return;
+        this.stepFade();
+        if (this.state != STATE.MEDIA_RUNNING) return;
+        if (this.needsFadeTicks()) this.handler.onFadeRequested();
+        if (this.autoFadeOut && this.fadeOutEnd < 0 && this.duration > 0) {
+            // re-armed if the timer fires early, stepFade only starts the fade out once the zone is reached
+            int delay = Math.max(this.duration - this.fadeTime - this.backend.getCurrentPosition(), AudioHandler.FADE_STEP);
+            this.fadeOutTimer = this.handler.schedule(() -> post(this::armFades), delay);
+        }
+    }
+    /**
+     * Called by the handler's fade ticker, queues one fade step unless the previous one has not run yet.
+     */
+    void postFadeStep() {
+        if (fadeStepPending.compareAndSet(false, true)) post(fadeStep);
+    }
+    /**
+     * Advance fades by one tick of the handler's fade timer.
+     * Fades follow the playback position so they hold while paused, the curve is sqrt(0.5 - 0.5 * cos(PI * x)).
+     */
+    private void stepFade() {
+        if (!this.prepared || this.destroyed) return;
+        int pos = this.backend.getCurrentPosition();
+        int remaining = this.duration - pos;
+
+        if (this.fadeOutEnd < 0 && this.autoFadeOut && pos > this.fadeTime && remaining <= this.fadeTime) {
+            this.startFadeOut(Math.min(pos + this.fadeTime, this.duration), this.fadeTime);
+        }
+        if (this.fadeInEnd < 0 && this.autoFadeIn && pos < this.fadeTime) {
+            this.fadeInStart = 0;
+            this.fadeInEnd = this.fadeTime;
+            sendStatusChange(MEDIA_FADE, FADE_IN);
+        }
+
+        float factor = 1f;
+        if (this.fadeInEnd >= 0) {
+            if (pos >= this.fadeInEnd) {
+                this.fadeInEnd = -1;
+                sendStatusChange(MEDIA_FADE, FADE_DONE);
+            } else {
+                factor = fadeCurve((pos - this.fadeInStart) / (float) (this.fadeInEnd - this.fadeInStart));
+            }
+        }
+        if (this.fadeOutEnd >= 0) {
+            if (this.fadeOutEnd - pos < FADE_MIN_REMAINING || remaining < FADE_MIN_REMAINING) {
+                sendStatusChange(MEDIA_FADE, FADE_DONE);
+                this.stopPlaying();
+                return;
+            }
+            factor = fadeCurve((this.fadeOutEnd - pos) / (float) this.fadeOutLength);
+        }
+        this.setFadeFactor(factor);
+    }
+    private void startFadeOut(int end, int length) {
+        boolean started = this.fadeOutEnd < 0;
+        this.fadeOutEnd = end;
+        this.fadeOutLength = Math.max(length, 1);
+        if (started) sendStatusChange(MEDIA_FADE, FADE_OUT);
+        this.handler.onFadeRequested();
+    }
+    private void clearFades() {
+        this.fadeInEnd = -1;
+        this.fadeOutEnd = -1;
+        this.setFadeFactor(1f);
+    }
+    private void setFadeFactor(float factor) {
+        if (factor == this.fadeFactor) return;
+        this.fadeFactor = factor;
+        this.applyVolume();
+    }
+    private static float fadeCurve(float x) {
+        x = Math.max(0f, Math.min(1f, x));
+        return (float) Math.sqrt(0.5 - 0.5 * Math.cos(Math.PI * x));
     }
 
     private void loadLocalAudioFile() throws IllegalArgumentException, SecurityException, IllegalStateException, IOException {
         if (this.audioFile.startsWith("/android_asset/")) {
             String f = this.audioFile.substring(15);
             android.content.res.AssetFileDescriptor fd = this.handler.cordova.getActivity().getAssets().openFd(f);
-            this.player.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            try {
+                this.backend.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            } finally {
+                fd.close(); // the backend keeps its own duplicate of the descriptor
+            }
         }
         else {
             File fp = new File(this.audioFile);
             if (fp.exists()) {
                 FileInputStream fileInputStream = new FileInputStream(this.audioFile);
-                this.player.setDataSource(fileInputStream.getFD());
-                fileInputStream.close();
+                try {
+                    this.backend.setDataSource(fileInputStream.getFD());
+                } finally {
+                    fileInputStream.close();
+                }
             }
             else {
-                this.player.setDataSource(Environment.getExternalStorageDirectory().getPath() + "/" + this.audioFile);
+                this.backend.setDataSource(Environment.getExternalStorageDirectory().getPath() + "/" + this.audioFile);
             }
         }
     }
-    private void sendStatusChange(int messageType, Float value) {
-        JSONObject statusDetails = new JSONObject();
-        try {
-            statusDetails.put("id", this.id);
-            statusDetails.put("msgType", messageType);
-            statusDetails.put("value", value.floatValue());
-        } catch (JSONException e) {
-            LOG.e(LOG_TAG, "Failed to create status details", e);
-        }
-        this.handler.sendEventMessage("status", statusDetails);
+    private void sendStatusChange(int messageType, float value) {
+        this.handler.sendStatus(this.id, messageType, value);
     }
 }
@@ -0,0 +1,279 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Process;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Captures the microphone with AudioRecord and streams fixed size 16 bit PCM chunks to JavaScript,
+ * optionally writing a WAV file at the same time.
+ * The capture thread only reads into a ring of chunks allocated up front and never waits for anything else.
+ * A second thread writes each chunk to the file and sends it over the message channel. JavaScript
+ * acknowledges chunks as it handles them. While MAX_IN_FLIGHT chunks are unacknowledged, further chunks
+ * are only counted instead of sent, so a slow WebView neither stalls capture or the file nor grows memory.
+ *
+ * Chunk message layout (little endian), decoded by decodeRecorderChunk in Media.js:
+ * 	u8 kind (2), u8 id length, id bytes, u32 sequence, u32 chunks skipped so far, f32 peak, f32 rms, PCM samples
+ */
+class AudioRecorder {
+
+    private static final String LOG_TAG = "AudioRecorder";
+    static final int KIND = 2;              // first byte of a chunk message, status batches start with 1
+    private static final int RING_CHUNKS = 64;
+    private static final int MAX_IN_FLIGHT = 16; // chunks sent to JavaScript and not acknowledged yet
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final AudioHandler handler;
+    private final String id;
+    private final byte[] idBytes;
+    private final int sampleRate;
+    private final int channels;
+    private final int chunkBytes;
+    private final boolean sendPcm;          // false sends only levels, for meters
+    private final File file;                // WAV written alongside, may be null
+    private final byte[][] ring;
+    private final Object filled = new Object();
+    private volatile long written = 0;      // chunks captured
+    private long consumed = 0;              // chunks written and sent, only touched by the sender
+    private volatile long acknowledged = -1; // highest sequence JavaScript handled
+    private long skipped = 0;               // chunks not sent because JavaScript was behind
+    private long overruns = 0;              // chunks lost because the sender fell a whole ring behind
+    private long fileBytes = 0;
+    private volatile boolean running = false;
+    private AudioRecord record;
+    private Thread captureThread;
+    private Thread senderThread;
+
+    /**
+     * @param chunkMs			Duration of one chunk
+     * @param file				WAV file to write, null for none
+     */
+    AudioRecorder(AudioHandler handler, String id, int sampleRate, int channels, int chunkMs, boolean sendPcm, File file) {
+        this.handler = handler;
+        this.id = id;
+        this.idBytes = id.getBytes(UTF8);
+        this.sampleRate = sampleRate;
+        this.channels = channels == 2 ? 2 : 1;
+        this.chunkBytes = Math.max(1, sampleRate * chunkMs / 1000) * this.channels * 2;
+        this.sendPcm = sendPcm;
+        this.file = file;
+        this.ring = new byte[RING_CHUNKS][chunkBytes];
+    }
+
+    /**
+     * Open the microphone and start both threads.
+     * @throws IOException		if the microphone or the file cannot be opened
+     */
+    void start() throws IOException {
+        int channelMask = channels == 2 ? AudioFormat.CHANNEL_IN_STEREO : AudioFormat.CHANNEL_IN_MONO;
+        int minBuffer = AudioRecord.getMinBufferSize(sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+        if (minBuffer <= 0) throw new IOException("Unsupported recording format " + sampleRate + " Hz, " + channels + " channels");
+        record = new AudioRecord(MediaRecorder.AudioSource.MIC, sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT,
+                Math.max(minBuffer, chunkBytes * 4));
+        if (record.getState() != AudioRecord.STATE_INITIALIZED) {
+            record.release();
+            throw new IOException("Microphone unavailable");
+        }
+        OutputStream out = null;
+        if (file != null) {
+            File parent = file.getParentFile();
+            if (parent != null) parent.mkdirs();
+            out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+            out.write(wavHeader(0));
+        }
+        OutputStream fileOut = out;
+        running = true;
+        record.startRecording();
+        captureThread = new Thread(this::capture, LOG_TAG + "-capture");
+        senderThread = new Thread(() -> send(fileOut), LOG_TAG + "-sender");
+        captureThread.start();
+        senderThread.start();
+    }
+
+    /**
+     * JavaScript handled every chunk up to sequence.
+     */
+    void acknowledge(long sequence) {
+        if (sequence > acknowledged) acknowledged = sequence;
+        synchronized (filled) {
+            filled.notify();
+        }
+    }
+
+    /**
+     * Stop capturing, flush the remaining chunks and finish the file. Blocks until both threads ended.
+     */
+    JSONObject stop() throws JSONException {
+        running = false;
+        try {
+            record.stop();
+        } catch (IllegalStateException e) {
+            // never started
+        }
+        synchronized (filled) {
+            filled.notify();
+        }
+        try {
+            captureThread.join();
+            senderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        record.release();
+        if (file != null) finishWav();
+        JSONObject result = new JSONObject();
+        result.put("file", file == null ? null : file.getAbsolutePath());
+        result.put("duration", written * (chunkBytes / (channels * 2)) / (double) sampleRate);
+        result.put("chunks", written);
+        result.put("skipped", skipped);
+        result.put("overruns", overruns);
+        return result;
+    }
+
+    // Capture thread: fill the ring, nothing here waits on the sender or JavaScript
+    private void capture() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        while (running) {
+            byte[] chunk = ring[(int) (written % RING_CHUNKS)];
+            int read = 0;
+            while (read < chunkBytes && running) {
+                int n = record.read(chunk, read, chunkBytes - read);
+                if (n < 0) {
+                    LOG.e(LOG_TAG, "AudioRecord read failed " + n);
+                    running = false;
+                    break;
+                }
+                read += n;
+            }
+            if (read < chunkBytes) break; // partial chunk at stop is dropped
+            written++;
+            synchronized (filled) {
+                filled.notify();
+            }
+        }
+    }
+
+    // Sender thread: write every chunk to the file, send those JavaScript has room for
+    private void send(OutputStream out) {
+        byte[] chunk = new byte[chunkBytes];    // copied out of the ring so capture can keep going
+        try {
+            while (true) {
+                long available;
+                synchronized (filled) {
+                    while ((available = written) == consumed && running) {
+                        filled.wait();
+                    }
+                }
+                if (available == consumed) break; // stopped and drained
+                // capture is filling slot written % RING_CHUNKS, a chunk a whole ring behind is being overwritten
+                if (available - consumed >= RING_CHUNKS) {
+                    overruns += available - RING_CHUNKS + 1 - consumed;
+                    consumed = available - RING_CHUNKS + 1;
+                }
+                System.arraycopy(ring[(int) (consumed % RING_CHUNKS)], 0, chunk, 0, chunkBytes);
+                if (written - consumed >= RING_CHUNKS) {
+                    // overwritten while copying
+                    overruns++;
+                    consumed++;
+                    continue;
+                }
+                if (out != null) {
+                    out.write(chunk, 0, chunkBytes);
+                    fileBytes += chunkBytes;
+                }
+                if (consumed - acknowledged > MAX_IN_FLIGHT) {
+                    skipped++;
+                } else {
+                    handler.sendBinaryMessage(chunkMessage(chunk, consumed));
+                }
+                consumed++;
+            }
+        } catch (IOException e) {
+            LOG.e(LOG_TAG, "Failed to write " + file, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    LOG.e(LOG_TAG, "Failed to close " + file, e);
+                }
+            }
+        }
+    }
+
+    private byte[] chunkMessage(byte[] chunk, long sequence) {
+        ByteBuffer pcm = ByteBuffer.wrap(chunk, 0, chunkBytes).order(ByteOrder.LITTLE_ENDIAN);
+        int samples = chunkBytes / 2;
+        int peak = 0;
+        double squares = 0;
+        for (int i = 0; i < samples; i++) {
+            int sample = pcm.getShort(i * 2);
+            peak = Math.max(peak, Math.abs(sample));
+            squares += (double) sample * sample;
+        }
+        ByteBuffer message = ByteBuffer.allocate(2 + idBytes.length + 16 + (sendPcm ? chunkBytes : 0)).order(ByteOrder.LITTLE_ENDIAN);
+        message.put((byte) KIND);
+        message.put((byte) idBytes.length);
+        message.put(idBytes);
+        message.putInt((int) sequence);
+        message.putInt((int) skipped);
+        message.putFloat(peak / 32768f);
+        message.putFloat((float) (Math.sqrt(squares / samples) / 32768.0));
+        if (sendPcm) message.put(chunk, 0, chunkBytes);
+        return message.array();
+    }
+
+    // Canonical 44 byte header of a 16 bit PCM WAV file
+    private byte[] wavHeader(long dataBytes) {
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("RIFF".getBytes(UTF8));
+        header.putInt((int) (36 + dataBytes));
+        header.put("WAVE".getBytes(UTF8));
+        header.put("fmt ".getBytes(UTF8));
+        header.putInt(16);
+        header.putShort((short) 1);
+        header.putShort((short) channels);
+        header.putInt(sampleRate);
+        header.putInt(sampleRate * channels * 2);
+        header.putShort((short) (channels * 2));
+        header.putShort((short) 16);
+        header.put("data".getBytes(UTF8));
+        header.putInt((int) dataBytes);
+        return header.array();
+    }
+
+    // Write the final sizes into the header written at start
+    private void finishWav() {
+        try {
+            RandomAccessFile wav = new RandomAccessFile(file, "rw");
+            try {
+                wav.seek(0);
+                wav.write(wavHeader(fileBytes));
+            } finally {
+                wav.close();
+            }
+        } catch (IOException e) {
+            LOG.e(LOG_TAG, "Failed to finish " + file, e);
+        }
+    }
+
+    String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,334 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal HTTP server on localhost that MediaPlayer reads remote sources through.
+ * Range requests are answered chunk by chunk from MediaCache, missing chunks are fetched from the
+ * origin with one ranged request per run of consecutive misses and stored on their way to the player.
+ * Sources without a known length (live streams) are passed through without caching.
+ * Cached sources are revalidated against the origin once per session with their ETag or Last-Modified.
+ * Every proxied url carries a random token of this session, requests without it are refused so other
+ * apps cannot use the port as an http relay or read the cache. Only http and https origins are fetched.
+ */
+class CacheProxy implements Runnable {
+
+    private static final String LOG_TAG = "CacheProxy";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int TIMEOUT = 15000;   // msec, origin connect and read timeout
+
+    private final MediaCache cache;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private final String token = new BigInteger(130, new SecureRandom()).toString(32);
+    private final Set<String> validated = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>()); // keys checked this session
+    private ServerSocket server = null;
+
+    CacheProxy(MediaCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Url that MediaPlayer should open instead of the remote one, starts the server on first use.
+     */
+    synchronized String proxyUrl(String url) throws IOException {
+        if (server == null) {
+            server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+            Thread accept = new Thread(this, LOG_TAG);
+            accept.setDaemon(true);
+            accept.start();
+        }
+        return "http://127.0.0.1:" + server.getLocalPort() + "/" + token + "/" + MediaCache.key(url) + "?url=" + URLEncoder.encode(url, "UTF-8");
+    }
+
+    synchronized void stop() {
+        if (server == null) return;
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to close proxy socket");
+        }
+        server = null;
+    }
+
+    /**
+     * Stop the server for good and abort the connections in flight, the proxy is not used again.
+     */
+    synchronized void shutdown() {
+        stop();
+        connections.shutdownNow();
+    }
+
+    @Override
+    public void run() {
+        ServerSocket socket;
+        synchronized (this) {
+            socket = server;
+        }
+        while (socket != null && !socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                connections.execute(() -> handle(client));
+            } catch (IOException e) {
+                // closed by stop()
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        try {
+            InputStream in = new BufferedInputStream(client.getInputStream());
+            String requestLine = readLine(in);
+            if (requestLine == null) return;
+            String[] request = requestLine.split(" ");
+            long start = 0;
+            long end = -1;
+            boolean ranged = false;
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0 || !line.substring(0, colon).trim().equalsIgnoreCase("range")) continue;
+                String range = line.substring(colon + 1).trim();
+                if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) continue;
+                String[] bounds = range.substring(6).split("-", -1);
+                if (bounds[0].isEmpty()) continue;
+                start = Long.parseLong(bounds[0]);
+                end = bounds.length > 1 && !bounds[1].isEmpty() ? Long.parseLong(bounds[1]) : -1;
+                ranged = true;
+            }
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+            if (request.length < 2 || !request[1].startsWith("/" + token + "/")) {
+                writeHead(out, "403 Forbidden", null, 0, null);
+                out.flush();
+                return;
+            }
+            int query = request[1].indexOf("?url=");
+            String url = query < 0 ? "" : URLDecoder.decode(request[1].substring(query + 5), "UTF-8");
+            if (!url.startsWith("http://") && !url.startsWith("https://")) {
+                writeHead(out, "400 Bad Request", null, 0, null);
+                out.flush();
+                return;
+            }
+            serve(url, request[0].equals("HEAD"), ranged, start, end, out);
+            out.flush();
+        } catch (Exception e) {
+            // the player closes connections whenever it seeks
+            LOG.d(LOG_TAG, "Connection closed: " + e.getMessage());
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOG.d(LOG_TAG, "Failed to close connection");
+            }
+        }
+    }
+
+    private void serve(String url, boolean head, boolean ranged, long start, long end, OutputStream out) throws IOException {
+        String key = MediaCache.key(url);
+        MediaCache.Meta meta = cache.meta(key);
+        if (meta != null && validated.add(key) && !isFresh(url, meta)) {
+            cache.remove(key);
+            meta = null;
+        }
+        Origin origin = null;
+        try {
+            if (meta == null) {
+                origin = new Origin(url, start - start % MediaCache.CHUNK_SIZE, null);
+                if (origin.length < 0) {
+                    passThrough(origin, head, out);
+                    return;
+                }
+                meta = cache.putMeta(key, origin.length, origin.contentType, origin.etag, origin.lastModified);
+                validated.add(key);
+            }
+            if (start >= meta.length) {
+                writeHead(out, "416 Range Not Satisfiable", null, 0, "bytes */" + meta.length);
+                return;
+            }
+            long last = end < 0 || end >= meta.length ? meta.length - 1 : end;
+            writeHead(out, ranged ? "206 Partial Content" : "200 OK", meta.contentType, last - start + 1,
+                    ranged ? "bytes " + start + "-" + last + "/" + meta.length : null);
+            if (head) return;
+
+            byte[] chunk = new byte[MediaCache.CHUNK_SIZE];
+            for (int index = (int) (start / MediaCache.CHUNK_SIZE); index <= last / MediaCache.CHUNK_SIZE; index++) {
+                long chunkStart = (long) index * MediaCache.CHUNK_SIZE;
+                int length = (int) Math.min(MediaCache.CHUNK_SIZE, meta.length - chunkStart);
+                int from = (int) Math.max(0, start - chunkStart);
+                int to = (int) Math.min(length, last - chunkStart + 1);
+                if (!cache.readChunk(key, index, chunk, length, to - from)) {
+                    if (origin == null || origin.offset != chunkStart) {
+                        if (origin != null) origin.close();
+                        origin = new Origin(url, chunkStart, meta);
+                        if (origin.changedFrom(meta)) {
+                            // replaced on the origin while being cached, start over on the next request
+                            cache.remove(key);
+                            validated.remove(key);
+                            throw new IOException("Source changed while cached " + url);
+                        }
+                    }
+                    origin.readFully(chunk, length);
+                    cache.writeChunk(key, index, chunk, length);
+                }
+                out.write(chunk, from, to - from);
+            }
+        } finally {
+            if (origin != null) origin.close();
+        }
+    }
+
+    /**
+     * Whether the cached copy of a source still matches the origin, asked with a conditional request for its first byte.
+     * Cached data is kept when the origin cannot be reached.
+     */
+    private static boolean isFresh(String url, MediaCache.Meta meta) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            connection.setRequestProperty("Range", "bytes=0-0");
+            if (meta.etag != null) connection.setRequestProperty("If-None-Match", meta.etag);
+            if (meta.lastModified != null) connection.setRequestProperty("If-Modified-Since", meta.lastModified);
+            int status = connection.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) return true;
+            if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) return true;
+            String etag = connection.getHeaderField("ETag");
+            String lastModified = connection.getHeaderField("Last-Modified");
+            if (etag != null || meta.etag != null) return etag != null && etag.equals(meta.etag);
+            if (lastModified != null || meta.lastModified != null) return lastModified != null && lastModified.equals(meta.lastModified);
+            return true;                    // no validators, the length check of each chunk read is all there is
+        } catch (IOException e) {
+            LOG.d(LOG_TAG, "Serving cached " + url + " without revalidation: " + e.getMessage());
+            return true;
+        } finally {
+            if (connection != null) connection.disconnect();
+        }
+    }
+
+    private void passThrough(Origin origin, boolean head, OutputStream out) throws IOException {
+        writeHead(out, "200 OK", origin.contentType, -1, null);
+        if (head) return;
+        byte[] buffer = new byte[16 * 1024];
+        int n;
+        while ((n = origin.in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+    }
+
+    private static void writeHead(OutputStream out, String status, String contentType, long length, String contentRange) throws IOException {
+        StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+        if (contentType != null && !contentType.isEmpty()) head.append("Content-Type: ").append(contentType).append("\r\n");
+        if (length >= 0) head.append("Content-Length: ").append(length).append("\r\n");
+        if (contentRange != null) head.append("Content-Range: ").append(contentRange).append("\r\n");
+        head.append("Accept-Ranges: bytes\r\nConnection: close\r\n\r\n");
+        out.write(head.toString().getBytes(ASCII));
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') return line.toString();
+            if (c != '\r') line.append((char) c);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Response body of the remote source read from a given offset to its end.
+     */
+    private static final class Origin {
+        final HttpURLConnection connection;
+        final InputStream in;
+        final String contentType;
+        final String etag;
+        final String lastModified;
+        final long length;                  // total length of the source, -1 if unknown
+        long offset;                        // source offset of the next byte of in
+
+        /**
+         * @param cached			Meta of the cached source chunks are added to, its version is required so chunks of two versions never mix
+         */
+        Origin(String url, long offset, MediaCache.Meta cached) throws IOException {
+            connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(TIMEOUT);
+            connection.setReadTimeout(TIMEOUT);
+            if (offset > 0) connection.setRequestProperty("Range", "bytes=" + offset + "-");
+            if (offset > 0 && cached != null && (cached.etag != null || cached.lastModified != null)) {
+                connection.setRequestProperty("If-Range", cached.etag != null ? cached.etag : cached.lastModified);
+            }
+            int status = connection.getResponseCode();
+            if (status != HttpURLConnection.HTTP_OK && status != HttpURLConnection.HTTP_PARTIAL) {
+                connection.disconnect();
+                throw new IOException("Origin responded " + status + " for " + url);
+            }
+            in = new BufferedInputStream(connection.getInputStream());
+            contentType = connection.getContentType();
+            etag = connection.getHeaderField("ETag");
+            lastModified = connection.getHeaderField("Last-Modified");
+            long total = -1;
+            if (status == HttpURLConnection.HTTP_PARTIAL) {
+                String range = connection.getHeaderField("Content-Range");
+                int slash = range == null ? -1 : range.lastIndexOf('/');
+                if (slash >= 0 && !range.endsWith("*")) total = Long.parseLong(range.substring(slash + 1).trim());
+            } else {
+                String contentLength = connection.getHeaderField("Content-Length");
+                if (contentLength != null) total = Long.parseLong(contentLength.trim());
+                // the origin ignored the range, skip to the requested offset
+                long skipped = 0;
+                while (skipped < offset) {
+                    long n = in.skip(offset - skipped);
+                    if (n <= 0) throw new IOException("Origin ended before offset " + offset);
+                    skipped += n;
+                }
+            }
+            this.length = total;
+            this.offset = offset;
+        }
+
+        boolean changedFrom(MediaCache.Meta meta) {
+            if (etag != null && meta.etag != null) return !etag.equals(meta.etag);
+            return lastModified != null && meta.lastModified != null && !lastModified.equals(meta.lastModified);
+        }
+
+        void readFully(byte[] buffer, int length) throws IOException {
+            int read = 0;
+            while (read < length) {
+                int n = in.read(buffer, read, length - read);
+                if (n < 0) throw new IOException("Origin ended early at " + (offset + read));
+                read += n;
+            }
+            offset += length;
+        }
+
+        void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // already closed by the origin
+            }
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.apache.cordova.media;
+
+import java.io.FileDescriptor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory PlaybackBackend that decodes nothing and plays silence on a wall clock.
+ * Selected with the MediaBackend=fake preference, so specs can drive the plugin's commands and events
+ * on devices and emulators without audio hardware or decoders. It is no performance model of MediaPlayer,
+ * timings taken with it say nothing about real playback. Every source lasts DURATION msec.
+ */
+class FakeBackend implements PlaybackBackend {
+
+    static final int DURATION = 30000;      // msec
+
+    private final ScheduledExecutorService timer; // delivers callbacks, like MediaPlayer's event thread
+    private Listener listener;
+    private boolean hasSource = false;
+    private boolean prepared = false;
+    private boolean playing = false;
+    private int position = 0;               // msec at startedAt
+    private long startedAt = 0;             // System.nanoTime() of the last start or seek while playing
+    private float volume = 1f;
+    private FakeBackend next = null;
+    private ScheduledFuture<?> completion = null;
+
+    FakeBackend(ScheduledExecutorService timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public synchronized void setDataSource(String path) {
+        hasSource = true;
+    }
+
+    @Override
+    public synchronized void setDataSource(FileDescriptor fd) {
+        hasSource = true;
+    }
+
+    @Override
+    public synchronized void setDataSource(FileDescriptor fd, long offset, long length) {
+        hasSource = true;
+    }
+
+    @Override
+    public synchronized void setDataSource(AudioBank.Clip clip) {
+        hasSource = true;
+    }
+
+    @Override
+    public synchronized void prepareAsync() {
+        if (!hasSource) throw new IllegalStateException("prepareAsync called without a data source");
+        timer.execute(() -> {
+            Listener target;
+            synchronized (this) {
+                prepared = true;
+                target = listener;
+            }
+            if (target != null) target.onPrepared();
+        });
+    }
+
+    @Override
+    public synchronized void start() {
+        if (!prepared) throw new IllegalStateException("start called before prepared");
+        if (playing) return;
+        if (position >= DURATION) position = 0;
+        playing = true;
+        startedAt = System.nanoTime();
+        scheduleCompletion();
+    }
+
+    @Override
+    public synchronized void pause() {
+        if (!playing) return;
+        position = getCurrentPosition();
+        playing = false;
+        cancelCompletion();
+    }
+
+    @Override
+    public synchronized void seekTo(int milliseconds) {
+        position = Math.max(0, Math.min(DURATION, milliseconds));
+        startedAt = System.nanoTime();
+        if (playing) scheduleCompletion();
+        Listener target = listener;
+        if (target != null) timer.execute(target::onSeekComplete);
+    }
+
+    @Override
+    public void seekTo(int milliseconds, boolean fast) {
+        seekTo(milliseconds);
+    }
+
+    @Override
+    public synchronized int getCurrentPosition() {
+        if (!playing) return position;
+        return (int) Math.min(DURATION, position + (System.nanoTime() - startedAt) / 1000000L);
+    }
+
+    @Override
+    public synchronized long getMediaTimeUs(long nanoTime) {
+        if (!playing) return position * 1000L;
+        return Math.min(DURATION * 1000L, position * 1000L + (nanoTime - startedAt) / 1000);
+    }
+
+    @Override
+    public synchronized int getDuration() {
+        return prepared ? DURATION : 0;
+    }
+
+    @Override
+    public synchronized void setVolume(float volume) {
+        this.volume = volume;
+    }
+
+    @Override
+    public synchronized void setNext(PlaybackBackend next) {
+        if (next != null && !(next instanceof FakeBackend)) {
+            throw new IllegalArgumentException("Cannot chain " + next.getClass().getSimpleName() + " to a FakeBackend");
+        }
+        this.next = (FakeBackend) next;
+    }
+
+    @Override
+    public synchronized void release() {
+        cancelCompletion();
+        playing = false;
+        prepared = false;
+        listener = null;
+        next = null;
+    }
+
+    private void scheduleCompletion() {
+        cancelCompletion();
+        completion = timer.schedule(this::complete, DURATION - position, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelCompletion() {
+        if (completion != null) {
+            completion.cancel(false);
+            completion = null;
+        }
+    }
+
+    private void complete() {
+        Listener target;
+        FakeBackend following;
+        synchronized (this) {
+            if (!playing) return;
+            playing = false;
+            position = DURATION;
+            completion = null;
+            target = listener;
+            following = next;
+            next = null;
+        }
+        if (following != null) following.start();
+        if (target != null) target.onCompletion();
+    }
+}
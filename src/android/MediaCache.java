@@ -0,0 +1,339 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * On-disk cache of remote sources, stored as fixed size chunks so any fetched byte range can be reused.
+ * Every source gets a directory named after the hash of its url holding a meta file and one file per chunk.
+ * The total size of all chunks is kept under a budget by deleting the least recently used ones, a source whose
+ * last chunk goes loses its meta file and directory too. Files of a previous run are indexed on first use.
+ */
+class MediaCache {
+
+    private static final String LOG_TAG = "MediaCache";
+    static final int CHUNK_SIZE = 128 * 1024;
+    private static final String META = "meta";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final File dir;
+    private long budget;                    // bytes
+    private long size = 0;                  // bytes of all cached chunks
+    private final LinkedHashMap<File, Long> chunks = new LinkedHashMap<File, Long>(64, 0.75f, true); // access ordered
+    private final HashMap<String, Meta> metas = new HashMap<String, Meta>();
+    private final HashMap<File, Integer> chunkCounts = new HashMap<File, Integer>(); // cached chunks per source directory
+    private boolean loaded = false;
+    private long hits = 0;
+    private long misses = 0;
+    private long bytesSaved = 0;            // bytes served from disk instead of the network
+    private long bytesFetched = 0;
+
+    /**
+     * Length, content type and validators of a cached source, known after its first response.
+     */
+    static final class Meta {
+        final long length;
+        final String contentType;
+        final String etag;                  // null if the origin sent none
+        final String lastModified;          // Last-Modified header as sent, null if none
+
+        Meta(long length, String contentType, String etag, String lastModified) {
+            this.length = length;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    MediaCache(File dir, long budget) {
+        this.dir = dir;
+        this.budget = budget;
+    }
+
+    /**
+     * Stable file name for a source url.
+     */
+    static String key(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(UTF8));
+            StringBuilder key = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(url.hashCode());
+        }
+    }
+
+    synchronized Meta meta(String key) {
+        load();
+        Meta meta = metas.get(key);
+        if (meta != null) return meta;
+        File file = new File(new File(dir, key), META);
+        if (!file.exists()) return null;
+        try {
+            String[] lines = new String(readFile(file), UTF8).split("\n", -1);
+            meta = new Meta(Long.parseLong(lines[0]), line(lines, 1), line(lines, 2), line(lines, 3));
+            metas.put(key, meta);
+            return meta;
+        } catch (Exception e) {
+            LOG.w(LOG_TAG, "Ignoring unreadable cache meta " + file);
+            return null;
+        }
+    }
+
+    synchronized Meta putMeta(String key, long length, String contentType, String etag, String lastModified) {
+        load();
+        Meta meta = new Meta(length, contentType, etag, lastModified);
+        metas.put(key, meta);
+        File source = new File(dir, key);
+        source.mkdirs();
+        try {
+            String text = length + "\n" + orEmpty(contentType) + "\n" + orEmpty(etag) + "\n" + orEmpty(lastModified);
+            writeFile(new File(source, META), text.getBytes(UTF8), -1);
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to write cache meta for " + key);
+        }
+        return meta;
+    }
+
+    /**
+     * Read a cached chunk into buffer.
+     * @param served			How many of its bytes will be sent, counted as saved network traffic
+     * @return 					false on a cache miss
+     */
+    boolean readChunk(String key, int index, byte[] buffer, int length, int served) {
+        File file = new File(new File(dir, key), Integer.toString(index));
+        synchronized (this) {
+            load();
+            Long cached = chunks.get(file);
+            if (cached == null || cached != length) {
+                misses++;
+                return false;
+            }
+        }
+        try {
+            FileInputStream in = new FileInputStream(file);
+            try {
+                int read = 0;
+                while (read < length) {
+                    int n = in.read(buffer, read, length - read);
+                    if (n < 0) throw new IOException("Truncated cache chunk " + file);
+                    read += n;
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // evicted or damaged while reading
+            synchronized (this) {
+                misses++;
+            }
+            return false;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        synchronized (this) {
+            hits++;
+            bytesSaved += served;
+        }
+        return true;
+    }
+
+    /**
+     * Store a chunk fetched from the network, evicting least recently used chunks above the budget.
+     */
+    void writeChunk(String key, int index, byte[] buffer, int length) {
+        File source = new File(dir, key);
+        File file = new File(source, Integer.toString(index));
+        synchronized (this) {
+            load();
+            bytesFetched += length;
+            if (budget <= 0 || length > budget) return;
+        }
+        try {
+            source.mkdirs();
+            writeFile(file, buffer, length);
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to cache chunk " + file);
+            return;
+        }
+        synchronized (this) {
+            Long previous = chunks.put(file, (long) length);
+            size += length - (previous == null ? 0 : previous);
+            if (previous == null) {
+                Integer count = chunkCounts.get(source);
+                chunkCounts.put(source, count == null ? 1 : count + 1);
+            }
+            trim(budget);
+        }
+    }
+
+    /**
+     * Forget a source whose origin changed, its chunks and meta are deleted.
+     */
+    synchronized void remove(String key) {
+        load();
+        File source = new File(dir, key);
+        Iterator<Map.Entry<File, Long>> it = chunks.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<File, Long> chunk = it.next();
+            if (!source.equals(chunk.getKey().getParentFile())) continue;
+            chunk.getKey().delete();
+            size -= chunk.getValue();
+            it.remove();
+        }
+        deleteSource(source);
+    }
+
+    synchronized void setBudget(long budget) {
+        load();
+        this.budget = budget;
+        trim(budget);
+    }
+
+    /**
+     * Delete every cached chunk and meta file.
+     */
+    synchronized void clear() {
+        load();
+        trim(0);
+        metas.clear();
+        chunkCounts.clear();
+        File[] sources = dir.listFiles();
+        if (sources == null) return;
+        for (File source : sources) {
+            File[] files = source.listFiles();
+            if (files != null) {
+                for (File file : files) file.delete();
+            }
+            source.delete();
+        }
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        load();
+        JSONObject stats = new JSONObject();
+        long requests = hits + misses;
+        stats.put("size", size);
+        stats.put("budget", budget);
+        stats.put("chunks", chunks.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRatio", requests == 0 ? 0 : (double) hits / requests);
+        stats.put("bytesSaved", bytesSaved);
+        stats.put("bytesFetched", bytesFetched);
+        return stats;
+    }
+
+    private void trim(long limit) {
+        Iterator<Map.Entry<File, Long>> it = chunks.entrySet().iterator();
+        while (size > limit && it.hasNext()) {
+            Map.Entry<File, Long> eldest = it.next();
+            File chunk = eldest.getKey();
+            chunk.delete();
+            size -= eldest.getValue();
+            it.remove();
+            File source = chunk.getParentFile();
+            Integer count = chunkCounts.get(source);
+            if (count == null || count <= 1) deleteSource(source);
+            else chunkCounts.put(source, count - 1);
+        }
+    }
+
+    // Drop the meta file and directory of a source without chunks left
+    private void deleteSource(File source) {
+        chunkCounts.remove(source);
+        metas.remove(source.getName());
+        new File(source, META).delete();
+        source.delete();
+    }
+
+    /**
+     * Index the files left by a previous run, done on the thread pool at startup or on first use.
+     * Rebuilds the LRU order from the chunk files and deletes sources that have no chunk.
+     */
+    synchronized void load() {
+        if (loaded) return;
+        loaded = true;
+        dir.mkdirs();
+        File[] sources = dir.listFiles();
+        if (sources == null) return;
+        ArrayList<File> files = new ArrayList<File>();
+        for (File source : sources) {
+            File[] list = source.listFiles();
+            if (list == null) continue;
+            int count = 0;
+            for (File file : list) {
+                if (file.getName().endsWith(".tmp")) file.delete();
+                else if (!file.getName().equals(META)) {
+                    files.add(file);
+                    count++;
+                }
+            }
+            if (count == 0) deleteSource(source);
+            else chunkCounts.put(source, count);
+        }
+        Collections.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            chunks.put(file, file.length());
+            size += file.length();
+        }
+        trim(budget);
+    }
+
+    // Meta lines written by older versions end after the content type
+    private static String line(String[] lines, int index) {
+        return lines.length > index && !lines[index].isEmpty() ? lines[index] : null;
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int read = 0;
+            while (read < data.length) {
+                int n = in.read(data, read, data.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    // Write through a temporary file so a crash never leaves a truncated chunk behind,
+    // each writer gets its own since two connections may fetch the same chunk at once
+    private static void writeFile(File file, byte[] data, int length) throws IOException {
+        File tmp = File.createTempFile(file.getName() + ".", ".tmp", file.getParentFile());
+        FileOutputStream out = new FileOutputStream(tmp);
+        try {
+            out.write(data, 0, length < 0 ? data.length : length);
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Failed to rename " + tmp);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.apache.cordova.media;
+
+import android.content.Context;
+import android.media.MediaDataSource;
+import android.media.MediaPlayer;
+import android.media.MediaTimestamp;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * PlaybackBackend on a pooled android.media.MediaPlayer, returned to the pool on release.
+ */
+class MediaPlayerBackend implements PlaybackBackend {
+
+    private final MediaPlayerPool pool;
+    private final MediaPlayer player;
+
+    MediaPlayerBackend(MediaPlayerPool pool, Context context) {
+        this.pool = pool;
+        this.player = pool.acquire();
+        this.player.setWakeMode(context, PowerManager.PARTIAL_WAKE_LOCK);
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        player.setOnPreparedListener(mp -> listener.onPrepared());
+        player.setOnCompletionListener(mp -> listener.onCompletion());
+        player.setOnErrorListener((mp, what, extra) -> {
+            listener.onError(what, extra);
+            return true; //so player not stops
+        });
+        player.setOnSeekCompleteListener(mp -> listener.onSeekComplete());
+        player.setOnBufferingUpdateListener((mp, percent) -> listener.onBufferingUpdate(percent));
+        player.setOnInfoListener((mp, what, extra) -> {
+            if (what == MediaPlayer.MEDIA_INFO_BUFFERING_START) listener.onStall(true);
+            else if (what == MediaPlayer.MEDIA_INFO_BUFFERING_END) listener.onStall(false);
+            return false;
+        });
+    }
+
+    @Override
+    public void setDataSource(String path) throws IOException {
+        player.setDataSource(path);
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        player.setDataSource(fd);
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd, long offset, long length) throws IOException {
+        player.setDataSource(fd, offset, length);
+    }
+
+    @Override
+    public void setDataSource(AudioBank.Clip clip) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            player.setDataSource(new MediaDataSource() {
+                @Override
+                public int readAt(long position, byte[] buffer, int offset, int size) {
+                    return clip.readAt(position, buffer, offset, size);
+                }
+
+                @Override
+                public long getSize() {
+                    return clip.length;
+                }
+
+                @Override
+                public void close() {
+                    // the mapping belongs to the bank
+                }
+            });
+        } else {
+            player.setDataSource(clip.fd, clip.offset, clip.length);
+        }
+    }
+
+    @Override
+    public void prepareAsync() {
+        player.prepareAsync();
+    }
+
+    @Override
+    public void start() {
+        player.start();
+    }
+
+    @Override
+    public void pause() {
+        player.pause();
+    }
+
+    @Override
+    public void seekTo(int milliseconds) {
+        player.seekTo(milliseconds);
+    }
+
+    @Override
+    public void seekTo(int milliseconds, boolean fast) {
+        if (fast && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            player.seekTo(milliseconds, MediaPlayer.SEEK_CLOSEST_SYNC);
+        } else {
+            player.seekTo(milliseconds);
+        }
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        return player.getCurrentPosition();
+    }
+
+    @Override
+    public long getMediaTimeUs(long nanoTime) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            MediaTimestamp timestamp = player.getTimestamp();
+            if (timestamp != null && timestamp.getMediaClockRate() > 0) {
+                long elapsedUs = (nanoTime - timestamp.getAnchorSystemNanoTime()) / 1000;
+                return timestamp.getAnchorMediaTimeUs() + (long) (elapsedUs * timestamp.getMediaClockRate());
+            }
+        }
+        return player.getCurrentPosition() * 1000L;
+    }
+
+    @Override
+    public int getDuration() {
+        return player.getDuration();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        player.setVolume(volume, volume);
+    }
+
+    @Override
+    public void setNext(PlaybackBackend next) {
+        if (next != null && !(next instanceof MediaPlayerBackend)) {
+            throw new IllegalArgumentException("Cannot chain " + next.getClass().getSimpleName() + " to a MediaPlayer");
+        }
+        player.setNextMediaPlayer(next == null ? null : ((MediaPlayerBackend) next).player);
+    }
+
+    @Override
+    public void release() {
+        pool.recycle(player);
+    }
+}
@@ -0,0 +1,120 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import android.media.MediaPlayer;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of idle MediaPlayer instances.
+ * Released players are reset() and kept for the next AudioPlayer instead of being destroyed,
+ * the least recently used idle instance is released when the pool is full.
+ */
+class MediaPlayerPool {
+
+    private static final String LOG_TAG = "MediaPlayerPool";
+
+    private final ArrayDeque<MediaPlayer> idle = new ArrayDeque<MediaPlayer>(); // most recently recycled first
+    private int maxSize;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    MediaPlayerPool(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    /**
+     * Take an idle player in the Idle state, or construct a new one if the pool is empty.
+     */
+    synchronized MediaPlayer acquire() {
+        MediaPlayer player = idle.pollFirst();
+        if (player != null) {
+            hits++;
+            return player;
+        }
+        misses++;
+        return new MediaPlayer();
+    }
+
+    /**
+     * Reset a player that is no longer used and keep it for reuse, evicting the oldest idle one if full.
+     */
+    void recycle(MediaPlayer player) {
+        player.setOnCompletionListener(null);
+        player.setOnPreparedListener(null);
+        player.setOnErrorListener(null);
+        player.setOnSeekCompleteListener(null);
+        player.setOnBufferingUpdateListener(null);
+        player.setOnInfoListener(null);
+        try {
+            player.reset();
+            // the volume survives reset, the next user may never set it
+            player.setVolume(1f, 1f);
+        } catch (Exception e) {
+            LOG.e(LOG_TAG, "Failed to reset player, releasing it", e);
+            player.release();
+            return;
+        }
+        MediaPlayer evicted = null;
+        synchronized (this) {
+            if (maxSize == 0) {
+                evicted = player;
+            } else {
+                idle.addFirst(player);
+                if (idle.size() > maxSize) {
+                    evicted = idle.pollLast();
+                }
+            }
+            if (evicted != null) evictions++;
+        }
+        if (evicted != null) evicted.release();
+    }
+
+    /**
+     * Change the maximum number of idle players, releasing the least recently used ones above it.
+     */
+    void setMaxSize(int maxSize) {
+        synchronized (this) {
+            this.maxSize = Math.max(0, maxSize);
+        }
+        trim(this.maxSize);
+    }
+
+    /**
+     * Release every idle player.
+     */
+    void clear() {
+        trim(0);
+    }
+
+    private void trim(int size) {
+        while (true) {
+            MediaPlayer evicted;
+            synchronized (this) {
+                if (idle.size() <= size) return;
+                evicted = idle.pollLast();
+                evictions++;
+            }
+            evicted.release();
+        }
+    }
+
+    synchronized int idleCount() {
+        return idle.size();
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        long requests = hits + misses;
+        stats.put("size", idle.size());
+        stats.put("maxSize", maxSize);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("hitRate", requests == 0 ? 0 : (double) hits / requests);
+        return stats;
+    }
+}
@@ -0,0 +1,177 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+import android.content.Context;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Duration, bitrate, channels and sample rate of sources, read by the probeMetadata action without creating players.
+ * A probe only reads the container headers with MediaExtractor, nothing is decoded or prepared.
+ * Results are kept in one file keyed like the peaks cache, local files include their size and modification time,
+ * so repeated lookups of an unchanged library never open the media again.
+ */
+class MetadataIndex {
+
+    private static final String LOG_TAG = "MetadataIndex";
+    private static final int VERSION = 1;
+    private static final int MAX_ENTRIES = 20000; // least recently used entries are dropped above
+
+    /**
+     * What a probe found, 0 for anything the container does not tell.
+     */
+    static final class Metadata {
+        final int durationMs;
+        final int bitrate;                  // bits per second
+        final int channels;
+        final int sampleRate;
+
+        Metadata(int durationMs, int bitrate, int channels, int sampleRate) {
+            this.durationMs = durationMs;
+            this.bitrate = bitrate;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+        }
+
+        JSONObject toJSON(String src) throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("src", src);
+            json.put("duration", durationMs / 1000.0);
+            json.put("bitrate", bitrate);
+            json.put("channels", channels);
+            json.put("sampleRate", sampleRate);
+            return json;
+        }
+    }
+
+    private final File file;
+    private LinkedHashMap<String, Metadata> entries; // loaded on first use
+    private boolean dirty = false;
+
+    MetadataIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Stored metadata of a source, or null if it was never probed or changed since.
+     */
+    synchronized Metadata get(String source) {
+        return entries().get(key(source));
+    }
+
+    synchronized void put(String source, Metadata metadata) {
+        entries().put(key(source), metadata);
+        dirty = true;
+    }
+
+    /**
+     * Write the index if anything was added since it was loaded or last saved.
+     */
+    synchronized void save() {
+        if (!dirty) return;
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<String, Metadata> entry : entries.entrySet()) {
+                    Metadata metadata = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(metadata.durationMs);
+                    out.writeInt(metadata.bitrate);
+                    out.writeInt(metadata.channels);
+                    out.writeInt(metadata.sampleRate);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Failed to rename " + tmp);
+            dirty = false;
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to save metadata index", e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Read the metadata of a source from its container.
+     * @param source			Resolved path, asset, bank clip or url as given to AudioPlayer
+     * @param url				Url the extractor should open for a remote source, such as the caching proxy's
+     */
+    static Metadata probe(Context context, Map<String, AudioBank> banks, String source, String url) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            PeakExtractor.open(context, banks, extractor, source, url);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime == null || !mime.startsWith("audio/")) continue;
+                int durationMs = format.containsKey(MediaFormat.KEY_DURATION) ? (int) (format.getLong(MediaFormat.KEY_DURATION) / 1000) : 0;
+                int bitrate = format.containsKey(MediaFormat.KEY_BIT_RATE) ? format.getInteger(MediaFormat.KEY_BIT_RATE) : 0;
+                File local = new File(source);
+                if (bitrate == 0 && durationMs > 0 && local.isFile()) {
+                    // most containers leave it out, the average over the file is what a library lists anyway
+                    bitrate = (int) (local.length() * 8000L / durationMs);
+                }
+                return new Metadata(durationMs, bitrate,
+                        format.containsKey(MediaFormat.KEY_CHANNEL_COUNT) ? format.getInteger(MediaFormat.KEY_CHANNEL_COUNT) : 0,
+                        format.containsKey(MediaFormat.KEY_SAMPLE_RATE) ? format.getInteger(MediaFormat.KEY_SAMPLE_RATE) : 0);
+            }
+            throw new IOException("No audio track in " + source);
+        } finally {
+            extractor.release();
+        }
+    }
+
+    private LinkedHashMap<String, Metadata> entries() {
+        if (entries == null) {
+            entries = new LinkedHashMap<String, Metadata>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Metadata> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+            load();
+        }
+        return entries;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION) return;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    entries.put(in.readUTF(), new Metadata(in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Ignoring unreadable metadata index " + file);
+            entries.clear();
+        }
+    }
+
+    // Local files include their size and modification time so edits are noticed
+    private static String key(String source) {
+        File file = new File(source);
+        return file.isFile() ? source + ":" + file.length() + ":" + file.lastModified() : source;
+    }
+}
@@ -0,0 +1,511 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import android.media.MediaCodec;
+import android.media.MediaDataSource;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PlaybackBackend voice of the SoftwareMixer.
+ * A worker thread decodes the source with MediaExtractor and MediaCodec into a ring buffer of stereo float
+ * frames that the mix thread reads from. The decoder runs ahead as far as the ring allows, so start and
+ * gapless transitions only depend on the mix thread. Positions are counted in frames consumed by the mixer.
+ * Sources decoded from start to end are handed to the PcmCache, a voice created for a cached source plays
+ * from that buffer directly and never opens an extractor or starts a decoder.
+ * The mix thread takes no lock: seeks reach it as a new ring segment or a pending clip frame it applies
+ * at the start of its next block, other controls are volatile fields.
+ */
+class MixerBackend implements PlaybackBackend, Runnable {
+
+    private static final String LOG_TAG = "MixerBackend";
+    private static final int RING_MS = 500;         // decoded audio buffered ahead of the mixer
+    private static final long TIMEOUT_US = 10000;   // MediaCodec dequeue timeout
+    private static final int IDLE_SLEEP = 5;        // msec the decoder waits for ring space or a seek
+    // MediaPlayer error codes reported to the listener
+    private static final int MEDIA_ERROR_UNKNOWN = 1;
+    private static final int MEDIA_ERROR_MALFORMED = -1007;
+    private static final int MEDIA_ERROR_UNSUPPORTED = -1010;
+
+    private final SoftwareMixer mixer;
+    private final PcmCache cache;
+    private final String key;               // resolved source path, cache key
+    private final PcmCache.Entry clip;      // cached source this voice plays from, null when decoding
+    private ByteBuffer capture = null;      // decoder thread only, copy of the decoded source for the cache
+    private Listener listener;
+    private MediaExtractor extractor = null; // created by setDataSource unless the source is cached
+    private Thread decoder = null;
+    private volatile boolean released = false;
+    private final AtomicInteger pendingSeek = new AtomicInteger(-1); // msec, -1 when none
+    private final AtomicLong pendingClipSeek = new AtomicLong(-1); // frame of the cached clip, -1 when none
+
+    // Set by the decoder before onPrepared
+    private volatile int sourceRate = 0;
+    private volatile int durationMs = 0;
+    private float[] ring;                   // interleaved stereo frames
+    private int capacity;                   // frames
+
+    // Ring state, written frames by the decoder, consumed frames by the mix thread
+    private volatile long written = 0;
+    private volatile long consumed = 0;
+    private volatile boolean inputDone = false; // every frame up to the end is in the ring
+    private volatile Segment segment = new Segment(0, 0); // frames written since the last seek
+    private double readPos = 0;             // mix thread only, fractional frame read
+
+    private volatile boolean playing = false;
+    private volatile boolean ended = false;
+    private boolean completionSent = false; // decoder thread only
+    private volatile float gain = 1f;
+    private float appliedGain = 1f;         // mix thread only, ramps to gain over one block
+    private volatile MixerBackend next = null;
+
+    /**
+     * Frames of the ring decoded from one seek target, published by the decoder as a whole.
+     * The mix thread skips whatever was left unread before start.
+     */
+    private static final class Segment {
+        final long start;                   // ring frame of the seek target
+        final int positionMs;               // seek target
+
+        Segment(long start, int positionMs) {
+            this.start = start;
+            this.positionMs = positionMs;
+        }
+    }
+
+    private final Runnable completion = () -> {
+        Listener target = listener;
+        if (target != null) target.onCompletion();
+    };
+
+    MixerBackend(SoftwareMixer mixer, PcmCache cache, String key) {
+        this.mixer = mixer;
+        this.cache = cache;
+        this.key = key;
+        this.clip = cache != null && key != null ? cache.get(key) : null;
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // The extractor reads the source right away, callers may close their descriptor afterwards
+    @Override
+    public void setDataSource(String path) throws IOException {
+        if (clip == null) extractor().setDataSource(path);
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd) throws IOException {
+        if (clip == null) extractor().setDataSource(fd);
+    }
+
+    @Override
+    public void setDataSource(FileDescriptor fd, long offset, long length) throws IOException {
+        if (clip == null) extractor().setDataSource(fd, offset, length);
+    }
+
+    @Override
+    public void setDataSource(AudioBank.Clip source) throws IOException {
+        if (clip != null) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            extractor().setDataSource(new MediaDataSource() {
+                @Override
+                public int readAt(long position, byte[] buffer, int offset, int size) {
+                    return source.readAt(position, buffer, offset, size);
+                }
+
+                @Override
+                public long getSize() {
+                    return source.length;
+                }
+
+                @Override
+                public void close() {
+                    // the mapping belongs to the bank
+                }
+            });
+        } else {
+            extractor().setDataSource(source.fd, source.offset, source.length);
+        }
+    }
+
+    private synchronized MediaExtractor extractor() {
+        if (released) throw new IllegalStateException("setDataSource called after release");
+        if (extractor == null) extractor = new MediaExtractor();
+        return extractor;
+    }
+
+    // Called once by whoever owns the extractor, release() before a decoder starts and the decoder after
+    private synchronized void releaseExtractor() {
+        if (extractor == null) return;
+        extractor.release();
+        extractor = null;
+    }
+
+    @Override
+    public synchronized void prepareAsync() {
+        if (decoder != null || sourceRate != 0) throw new IllegalStateException("prepareAsync called twice");
+        if (clip != null) {
+            sourceRate = clip.sampleRate;
+            durationMs = clip.durationMs();
+            mixer.add(this);
+            Listener target = listener;
+            if (target != null) target.onPrepared();
+            return;
+        }
+        decoder = new Thread(this, LOG_TAG);
+        decoder.start();
+    }
+
+    @Override
+    public void start() {
+        if (sourceRate == 0) throw new IllegalStateException("start called before prepared");
+        if (ended) seekTo(0);
+        playing = true;
+        mixer.wake();
+    }
+
+    @Override
+    public void pause() {
+        playing = false;
+    }
+
+    @Override
+    public void seekTo(int milliseconds) {
+        if (clip != null) {
+            long frame = Math.min((long) Math.max(0, milliseconds) * clip.sampleRate / 1000L, clip.frames);
+            // applied by the mix thread on its next block, the position reads the target meanwhile
+            pendingClipSeek.set(frame);
+            consumed = frame;
+            ended = false;
+            Listener target = listener;
+            if (target != null) target.onSeekComplete();
+            return;
+        }
+        pendingSeek.set(Math.max(0, milliseconds));
+        ended = false;
+        inputDone = false;
+    }
+
+    // Decoding from the previous sync frame to the target is quick in process, so both seeks are precise
+    @Override
+    public void seekTo(int milliseconds, boolean fast) {
+        seekTo(milliseconds);
+    }
+
+    @Override
+    public int getCurrentPosition() {
+        if (ended) return durationMs;
+        int rate = sourceRate;
+        if (rate == 0) return 0;
+        if (clip != null) return (int) (consumed * 1000L / rate);
+        Segment current = segment;
+        // until the mix thread reaches the segment its first frame is the position
+        long frames = Math.max(0, consumed - current.start);
+        return current.positionMs + (int) (frames * 1000L / rate);
+    }
+
+    // Voices of one mixer advance on the same frame clock, so the position is as precise as needed
+    @Override
+    public long getMediaTimeUs(long nanoTime) {
+        return getCurrentPosition() * 1000L;
+    }
+
+    @Override
+    public int getDuration() {
+        return durationMs;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        gain = volume;
+    }
+
+    @Override
+    public void setNext(PlaybackBackend next) {
+        if (next != null && !(next instanceof MixerBackend)) {
+            throw new IllegalArgumentException("Cannot chain " + next.getClass().getSimpleName() + " to a mixer voice");
+        }
+        this.next = (MixerBackend) next;
+    }
+
+    @Override
+    public void release() {
+        released = true;
+        playing = false;
+        next = null;
+        mixer.remove(this);
+        synchronized (this) {
+            // without a decoder thread nobody else releases the extractor
+            if (decoder == null) releaseExtractor();
+        }
+    }
+
+    boolean isPlaying() {
+        return playing;
+    }
+
+    /**
+     * Add this voice into the mix, called by the mix thread for every block.
+     * @return 					true if the voice is playing, even if the decoder fell behind
+     */
+    boolean mixInto(float[] mix, int frames, int outputRate) {
+        if (clip != null) {
+            long seek = pendingClipSeek.getAndSet(-1);
+            if (seek >= 0) readPos = seek;
+            return playing && mixClip(mix, frames, outputRate);
+        }
+        Segment current = segment;
+        if (readPos < current.start) {
+            // skip what was left of the previous segment, the decoder may reuse its room
+            readPos = current.start;
+            consumed = current.start;
+        }
+        if (!playing) return false;
+        boolean done = inputDone;
+        long available = written;
+        long limit = done ? available : available - 1;
+        double step = sourceRate / (double) outputRate;
+        float target = gain;
+        float g = appliedGain;
+        float ramp = (target - g) / frames;
+        int i = 0;
+        for (; i < frames; i++) {
+            long index = (long) readPos;
+            if (index >= limit) break;
+            long following = index + 1 < available ? index + 1 : index;
+            int a = (int) (index % capacity) * 2;
+            int b = (int) (following % capacity) * 2;
+            float frac = (float) (readPos - index);
+            g += ramp;
+            mix[2 * i] += (ring[a] + (ring[b] - ring[a]) * frac) * g;
+            mix[2 * i + 1] += (ring[a + 1] + (ring[b + 1] - ring[a + 1]) * frac) * g;
+            readPos += step;
+        }
+        appliedGain = i == frames ? target : g;
+        consumed = Math.min((long) readPos, available);
+        if (i < frames && done) {
+            onEnded();
+        }
+        return true;
+    }
+
+    // Same as the ring path, reading 16 bit frames of the cached clip
+    private boolean mixClip(float[] mix, int frames, int outputRate) {
+        ByteBuffer pcm = clip.pcm;
+        long limit = clip.frames;
+        double step = sourceRate / (double) outputRate;
+        float target = gain;
+        float g = appliedGain;
+        float ramp = (target - g) / frames;
+        int i = 0;
+        for (; i < frames; i++) {
+            long index = (long) readPos;
+            if (index >= limit) break;
+            int a = (int) index * 4;
+            int b = index + 1 < limit ? a + 4 : a;
+            float frac = (float) (readPos - index);
+            g += ramp;
+            float left = pcm.getShort(a) / 32768f;
+            float right = pcm.getShort(a + 2) / 32768f;
+            mix[2 * i] += (left + (pcm.getShort(b) / 32768f - left) * frac) * g;
+            mix[2 * i + 1] += (right + (pcm.getShort(b + 2) / 32768f - right) * frac) * g;
+            readPos += step;
+        }
+        appliedGain = i == frames ? target : g;
+        consumed = Math.min((long) readPos, limit);
+        if (i < frames) {
+            onEnded();
+            // no decoder thread to report it, the only hand-off from the mix thread and once per playback
+            mixer.events.execute(completion);
+        }
+        return true;
+    }
+
+    // Reached the end, start the chained voice at the same block boundary
+    private void onEnded() {
+        playing = false;
+        ended = true;
+        MixerBackend chained = next;
+        next = null;
+        if (chained != null) chained.playing = true;
+    }
+
+    // Decoder thread: open the codec, report prepared and keep the ring filled until released
+    @Override
+    public void run() {
+        MediaCodec codec = null;
+        try {
+            int track = -1;
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    track = i;
+                    break;
+                }
+            }
+            if (track < 0) {
+                notifyError(MEDIA_ERROR_UNSUPPORTED);
+                return;
+            }
+            extractor.selectTrack(track);
+            sourceRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            durationMs = format.containsKey(MediaFormat.KEY_DURATION) ? (int) (format.getLong(MediaFormat.KEY_DURATION) / 1000) : 0;
+            capacity = Math.max(sourceRate * RING_MS / 1000, SoftwareMixer.BLOCK_FRAMES * 4);
+            ring = new float[capacity * 2];
+            long bytes = durationMs * (long) sourceRate / 1000L * 4L;
+            if (cache != null && key != null && durationMs > 0 && cache.wants(key, bytes)) {
+                // room for encoder padding beyond the declared duration
+                capture = ByteBuffer.allocateDirect((int) (bytes + bytes / 10 + sourceRate)).order(ByteOrder.nativeOrder());
+            }
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            if (released) return;
+            mixer.add(this);
+            Listener target = listener;
+            if (target != null) target.onPrepared();
+            decode(codec, format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+        } catch (Exception e) {
+            if (!released) {
+                LOG.e(LOG_TAG, "Decoder failed", e);
+                notifyError(MEDIA_ERROR_MALFORMED);
+            }
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (Exception e) {
+                    // already stopped by a failure
+                }
+                codec.release();
+            }
+            releaseExtractor();
+            mixer.remove(this);
+        }
+    }
+
+    private void decode(MediaCodec codec, int channels) throws InterruptedException {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputEos = false;
+        long skipUntilUs = 0;
+        while (!released) {
+            int seek = pendingSeek.getAndSet(-1);
+            if (seek >= 0) {
+                extractor.seekTo(seek * 1000L, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                codec.flush();
+                inputEos = false;
+                skipUntilUs = seek * 1000L;
+                // only a decode from start to end is cached
+                if (capture != null && seek == 0) capture.clear();
+                else capture = null;
+                // the old stream may have ended since seekTo
+                inputDone = false;
+                segment = new Segment(written, seek);
+                completionSent = false;
+                Listener target = listener;
+                if (target != null) target.onSeekComplete();
+                continue;
+            }
+            if (inputDone) {
+                if (ended && !completionSent) {
+                    completionSent = true;
+                    Listener target = listener;
+                    if (target != null) target.onCompletion();
+                }
+                Thread.sleep(IDLE_SLEEP);
+                continue;
+            }
+            if (!inputEos) {
+                int in = codec.dequeueInputBuffer(TIMEOUT_US);
+                if (in >= 0) {
+                    int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputEos = true;
+                    } else {
+                        codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+            int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                channels = codec.getOutputFormat().getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            } else if (out >= 0) {
+                if (info.size > 0) {
+                    ByteBuffer pcm = codec.getOutputBuffer(out).order(ByteOrder.nativeOrder());
+                    int frames = info.size / (2 * channels);
+                    int skip = 0;
+                    if (info.presentationTimeUs < skipUntilUs) {
+                        skip = (int) Math.min(frames, (skipUntilUs - info.presentationTimeUs) * sourceRate / 1000000L);
+                    }
+                    capture(pcm, info.offset, skip, frames, channels);
+                    write(pcm, info.offset, skip, frames, channels);
+                }
+                codec.releaseOutputBuffer(out, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    if (capture != null) {
+                        int captured = capture.position() / 4;
+                        capture.flip();
+                        cache.put(key, new PcmCache.Entry(capture, sourceRate, captured));
+                        capture = null;
+                    }
+                    inputDone = true;
+                }
+            }
+        }
+    }
+
+    // Append decoded frames as 16 bit stereo to the cache copy, dropped if the source is longer than declared
+    private void capture(ByteBuffer pcm, int offset, int from, int frames, int channels) {
+        if (capture == null) return;
+        if (capture.remaining() < (frames - from) * 4) {
+            capture = null;
+            return;
+        }
+        for (int frame = from; frame < frames; frame++) {
+            int sample = offset + frame * channels * 2;
+            short left = pcm.getShort(sample);
+            capture.putShort(left);
+            capture.putShort(channels > 1 ? pcm.getShort(sample + 2) : left);
+        }
+    }
+
+    // Copy 16 bit frames into the ring as stereo floats, waiting for the mixer while it is full
+    private void write(ByteBuffer pcm, int offset, int from, int frames, int channels) throws InterruptedException {
+        long position = written;
+        for (int frame = from; frame < frames; frame++) {
+            while (position - consumed >= capacity) {
+                if (released || pendingSeek.get() >= 0) return;
+                written = position;
+                Thread.sleep(IDLE_SLEEP);
+            }
+            int sample = offset + frame * channels * 2;
+            float left = pcm.getShort(sample) / 32768f;
+            float right = channels > 1 ? pcm.getShort(sample + 2) / 32768f : left;
+            int index = (int) (position % capacity) * 2;
+            ring[index] = left;
+            ring[index + 1] = right;
+            position++;
+        }
+        written = position;
+    }
+
+    private void notifyError(int extra) {
+        Listener target = listener;
+        if (target != null) target.onError(MEDIA_ERROR_UNKNOWN, extra);
+    }
+}
@@ -0,0 +1,161 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Fully decoded clips kept off-heap for the mixer backend, keyed by the resolved source path.
+ * A new player of a cached clip plays straight from memory without opening a codec.
+ * The total size is kept under a byte budget by evicting the least recently used entries that are not pinned,
+ * clips larger than a quarter of the budget are not cached so one long source cannot flush all short ones.
+ * Pinned entries together are capped at the budget. Remote sources are never cached, a url may serve other audio later.
+ */
+class PcmCache {
+
+    private static final String LOG_TAG = "PcmCache";
+
+    /**
+     * 16 bit interleaved stereo frames in a direct buffer, read with absolute gets so voices can share it.
+     */
+    static final class Entry {
+        final ByteBuffer pcm;
+        final int sampleRate;
+        final int frames;
+
+        Entry(ByteBuffer pcm, int sampleRate, int frames) {
+            this.pcm = pcm;
+            this.sampleRate = sampleRate;
+            this.frames = frames;
+        }
+
+        int bytes() {
+            return frames * 4;
+        }
+
+        int durationMs() {
+            return (int) (frames * 1000L / sampleRate);
+        }
+    }
+
+    private long budget;                    // bytes
+    private long size = 0;                  // bytes of all entries
+    private long pinnedSize = 0;            // bytes of the pinned entries
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // access ordered
+    private final HashSet<String> pinned = new HashSet<String>(); // kept while others are evicted, may not be cached yet
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    PcmCache(long budget) {
+        this.budget = Math.max(0, budget);
+    }
+
+    /**
+     * Decoded clip of a source, counted as a hit. Misses are counted by wants, for sources the cache would keep.
+     */
+    synchronized Entry get(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) hits++;
+        return entry;
+    }
+
+    /**
+     * Whether a decoder should capture a source of about this many bytes, counted as a miss if so.
+     */
+    synchronized boolean wants(String key, long bytes) {
+        if (entries.containsKey(key) || !fits(key, bytes)) return false;
+        misses++;
+        return true;
+    }
+
+    synchronized void put(String key, Entry entry) {
+        if (entries.containsKey(key) || !fits(key, entry.bytes())) return;
+        entries.put(key, entry);
+        size += entry.bytes();
+        if (pinned.contains(key)) pinnedSize += entry.bytes();
+        trim(budget);
+    }
+
+    /**
+     * Keep a source decoded while other clips are evicted, or make it evictable again.
+     * A source pinned before it is decoded is cached like any other if it turns out not to fit.
+     * @return 					false if the decoded source does not fit in the budget next to the clips already pinned
+     */
+    synchronized boolean pin(String key, boolean pin) {
+        Entry entry = entries.get(key);
+        if (pin) {
+            if (pinned.contains(key)) return true;
+            if (entry != null) {
+                if (pinnedSize + entry.bytes() > budget) return false;
+                pinnedSize += entry.bytes();
+            }
+            pinned.add(key);
+        } else if (pinned.remove(key)) {
+            if (entry != null) pinnedSize -= entry.bytes();
+            trim(budget);
+        }
+        return true;
+    }
+
+    /**
+     * Change the budget, unpinning the least recently used pinned clips that no longer fit.
+     */
+    synchronized void setBudget(long budget) {
+        this.budget = Math.max(0, budget);
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (pinnedSize > this.budget && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (pinned.remove(eldest.getKey())) pinnedSize -= eldest.getValue().bytes();
+        }
+        trim(this.budget);
+    }
+
+    /**
+     * Drop every entry that is not pinned, voices still playing one keep their buffer until released.
+     */
+    synchronized void clear() {
+        trim(0);
+    }
+
+    synchronized JSONObject getStats() throws JSONException {
+        JSONObject stats = new JSONObject();
+        long requests = hits + misses;
+        stats.put("size", size);
+        stats.put("budget", budget);
+        stats.put("entries", entries.size());
+        stats.put("pinned", pinned.size());
+        stats.put("pinnedSize", pinnedSize);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("hitRatio", requests == 0 ? 0 : (double) hits / requests);
+        return stats;
+    }
+
+    // Whether a decoded source of this many bytes may be cached, a pin that does not fit is dropped
+    private boolean fits(String key, long bytes) {
+        if (key.contains("http://") || key.contains("https://") || key.contains("rtsp://")) return false;
+        if (!pinned.contains(key)) return bytes <= budget / 4;
+        if (pinnedSize + bytes <= budget) return true;
+        pinned.remove(key);
+        LOG.w(LOG_TAG, "Not pinning " + key + ", " + bytes + " bytes do not fit next to the pinned clips");
+        return bytes <= budget / 4;
+    }
+
+    private void trim(long limit) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (size > limit && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (pinned.contains(eldest.getKey())) continue;
+            size -= eldest.getValue().bytes();
+            evictions++;
+            it.remove();
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.media.MediaCodec;
+import android.media.MediaDataSource;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Build;
+import android.os.Environment;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Waveform peaks of a source for drawing, computed natively by the getPeaks action.
+ * The source is decoded a codec buffer at a time and folded into min, max and RMS per bucket as it goes,
+ * so memory stays proportional to the bucket count whatever the length of the source.
+ * Results are kept on disk, one small file per source and bucket count, the oldest files are deleted above MAX_FILES.
+ */
+class PeakExtractor {
+
+    private static final String LOG_TAG = "PeakExtractor";
+    static final int MAX_BUCKETS = 65536;
+    private static final int MAX_FILES = 256;
+    private static final long TIMEOUT_US = 10000;   // MediaCodec dequeue timeout
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Peaks of a source, per bucket of equal duration.
+     */
+    static final class Peaks {
+        final int durationMs;
+        final float[] min;
+        final float[] max;
+        final float[] rms;
+
+        Peaks(int durationMs, int buckets) {
+            this.durationMs = durationMs;
+            this.min = new float[buckets];
+            this.max = new float[buckets];
+            this.rms = new float[buckets];
+        }
+
+        /**
+         * Buckets [from, to) as sent to JavaScript, done is false for a progress update.
+         */
+        JSONObject toJSON(int from, int to, boolean done) throws JSONException {
+            JSONArray minimums = new JSONArray();
+            JSONArray maximums = new JSONArray();
+            JSONArray levels = new JSONArray();
+            for (int i = from; i < to; i++) {
+                minimums.put(min[i]);
+                maximums.put(max[i]);
+                levels.put(rms[i]);
+            }
+            JSONObject json = new JSONObject();
+            json.put("done", done);
+            json.put("progress", (double) to / min.length);
+            json.put("buckets", min.length);
+            json.put("from", from);
+            json.put("duration", durationMs / 1000.0);
+            json.put("min", minimums);
+            json.put("max", maximums);
+            json.put("rms", levels);
+            return json;
+        }
+    }
+
+    /**
+     * Receives the buckets completed since the previous call while a source is decoded.
+     */
+    interface Progress {
+        void onPeaks(Peaks peaks, int from, int to);
+    }
+
+    private final Context context;
+    private final File dir;
+    private final Map<String, AudioBank> banks; // loaded banks, for bank:// sources
+
+    PeakExtractor(Context context, File dir, Map<String, AudioBank> banks) {
+        this.context = context;
+        this.dir = dir;
+        this.banks = banks;
+    }
+
+    /**
+     * Peaks stored by a previous extraction, or null.
+     */
+    Peaks cached(String source, int buckets) {
+        String key = key(source, buckets);
+        if (key == null) return null;
+        File file = new File(dir, key);
+        if (!file.exists()) return null;
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != FORMAT_VERSION || in.readInt() != buckets) return null;
+                Peaks peaks = new Peaks(in.readInt(), buckets);
+                for (int i = 0; i < buckets; i++) {
+                    peaks.min[i] = in.readFloat();
+                    peaks.max[i] = in.readFloat();
+                    peaks.rms[i] = in.readFloat();
+                }
+                file.setLastModified(System.currentTimeMillis());
+                return peaks;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Ignoring unreadable peaks " + file);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Decode a source and compute its peaks, storing them for the next request.
+     * @param source			Resolved path, asset or url as given to AudioPlayer
+     * @param url				Url the extractor should open for a remote source, such as the caching proxy's
+     * @param progress			Called every progressInterval msec of decoding, may be null
+     */
+    Peaks extract(String source, String url, int buckets, Progress progress, int progressInterval) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            open(context, banks, extractor, source, url);
+            int track = -1;
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    track = i;
+                    break;
+                }
+            }
+            if (track < 0) throw new IOException("No audio track in " + source);
+            if (!format.containsKey(MediaFormat.KEY_DURATION)) throw new IOException("Unknown duration of " + source);
+            extractor.selectTrack(track);
+            long durationUs = Math.max(1, format.getLong(MediaFormat.KEY_DURATION));
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            Peaks peaks = decode(extractor, codec, format, durationUs, buckets, progress, progressInterval);
+            store(source, buckets, peaks);
+            return peaks;
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (Exception e) {
+                    // already stopped by a failure
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private Peaks decode(MediaExtractor extractor, MediaCodec codec, MediaFormat format, long durationUs,
+                         int buckets, Progress progress, int progressInterval) {
+        Peaks peaks = new Peaks((int) (durationUs / 1000), buckets);
+        Arrays.fill(peaks.min, 1f);
+        Arrays.fill(peaks.max, -1f);
+        double[] squares = new double[buckets];
+        int[] counts = new int[buckets];
+        int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+        int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        boolean inputEos = false;
+        int reported = 0;                   // buckets sent to progress
+        int bucket = 0;
+        long nextReport = System.nanoTime() + progressInterval * 1000000L;
+        while (true) {
+            if (!inputEos) {
+                int in = codec.dequeueInputBuffer(TIMEOUT_US);
+                if (in >= 0) {
+                    int size = extractor.readSampleData(codec.getInputBuffer(in), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(in, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputEos = true;
+                    } else {
+                        codec.queueInputBuffer(in, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+            int out = codec.dequeueOutputBuffer(info, TIMEOUT_US);
+            if (out == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                MediaFormat output = codec.getOutputFormat();
+                channels = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            } else if (out >= 0) {
+                if (info.size > 0) {
+                    ByteBuffer pcm = codec.getOutputBuffer(out).order(ByteOrder.nativeOrder());
+                    int frames = info.size / (2 * channels);
+                    for (int frame = 0; frame < frames; frame++) {
+                        long timeUs = info.presentationTimeUs + frame * 1000000L / sampleRate;
+                        bucket = (int) Math.max(0, Math.min(buckets - 1, timeUs * buckets / durationUs));
+                        int sample = info.offset + frame * channels * 2;
+                        for (int channel = 0; channel < channels; channel++) {
+                            float value = pcm.getShort(sample + channel * 2) / 32768f;
+                            if (value < peaks.min[bucket]) peaks.min[bucket] = value;
+                            if (value > peaks.max[bucket]) peaks.max[bucket] = value;
+                            squares[bucket] += value * value;
+                            counts[bucket]++;
+                        }
+                    }
+                }
+                codec.releaseOutputBuffer(out, false);
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+            }
+            // buckets before the current one are complete, samples arrive in order
+            if (progress != null && bucket > reported && System.nanoTime() >= nextReport) {
+                finish(peaks, squares, counts, reported, bucket);
+                progress.onPeaks(peaks, reported, bucket);
+                reported = bucket;
+                nextReport = System.nanoTime() + progressInterval * 1000000L;
+            }
+        }
+        finish(peaks, squares, counts, reported, buckets);
+        return peaks;
+    }
+
+    // Turn the accumulated sums of buckets [from, to) into their RMS, empty buckets become silence
+    private static void finish(Peaks peaks, double[] squares, int[] counts, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (counts[i] == 0) {
+                peaks.min[i] = 0f;
+                peaks.max[i] = 0f;
+                peaks.rms[i] = 0f;
+            } else {
+                peaks.rms[i] = (float) Math.sqrt(squares[i] / counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Point an extractor at a source, with the same resolution as AudioPlayer.
+     * @param url				Url to open for a remote source, such as the caching proxy's
+     */
+    static void open(Context context, Map<String, AudioBank> banks, MediaExtractor extractor, String source, String url) throws IOException {
+        if (source.contains("http://") || source.contains("https://") || source.contains("rtsp://")) {
+            extractor.setDataSource(url);
+        } else if (source.startsWith(AudioBank.SCHEME)) {
+            AudioBank.Clip clip = AudioBank.clip(banks, source);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                extractor.setDataSource(new MediaDataSource() {
+                    @Override
+                    public int readAt(long position, byte[] buffer, int offset, int size) {
+                        return clip.readAt(position, buffer, offset, size);
+                    }
+
+                    @Override
+                    public long getSize() {
+                        return clip.length;
+                    }
+
+                    @Override
+                    public void close() {
+                        // the mapping belongs to the bank
+                    }
+                });
+            } else {
+                extractor.setDataSource(clip.fd, clip.offset, clip.length);
+            }
+        } else if (source.startsWith("/android_asset/")) {
+            AssetFileDescriptor fd = context.getAssets().openFd(source.substring(15));
+            try {
+                extractor.setDataSource(fd.getFileDescriptor(), fd.getStartOffset(), fd.getLength());
+            } finally {
+                fd.close();
+            }
+        } else if (new File(source).exists()) {
+            FileInputStream in = new FileInputStream(source);
+            try {
+                extractor.setDataSource(in.getFD());
+            } finally {
+                in.close();
+            }
+        } else {
+            extractor.setDataSource(Environment.getExternalStorageDirectory().getPath() + "/" + source);
+        }
+    }
+
+    private void store(String source, int buckets, Peaks peaks) {
+        String key = key(source, buckets);
+        if (key == null) return;
+        dir.mkdirs();
+        File file = new File(dir, key);
+        File tmp = null;
+        try {
+            // unique per call, concurrent extractions of one source must not write the same file
+            tmp = File.createTempFile(key + ".", ".tmp", dir);
+            DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(buckets);
+                out.writeInt(peaks.durationMs);
+                for (int i = 0; i < buckets; i++) {
+                    out.writeFloat(peaks.min[i]);
+                    out.writeFloat(peaks.max[i]);
+                    out.writeFloat(peaks.rms[i]);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Failed to rename " + tmp);
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to store peaks of " + source);
+            if (tmp != null) tmp.delete();
+            return;
+        }
+        trim();
+    }
+
+    // Delete the least recently used files above MAX_FILES
+    private synchronized void trim() {
+        File[] files = dir.listFiles();
+        if (files == null || files.length <= MAX_FILES) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < files.length - MAX_FILES; i++) {
+            files[i].delete();
+        }
+    }
+
+    /**
+     * Cache file name of a source, local files include their size and modification time so edits are noticed,
+     * bank:// sources the identity of their bank file. Null for a clip of a bank that is not loaded.
+     */
+    private String key(String source, int buckets) {
+        String version;
+        if (source.startsWith(AudioBank.SCHEME)) {
+            try {
+                version = ":" + AudioBank.identity(banks, source);
+            } catch (FileNotFoundException e) {
+                return null;
+            }
+        } else {
+            File file = new File(source);
+            version = file.isFile() ? ":" + file.length() + ":" + file.lastModified() : "";
+        }
+        return MediaCache.key(source + version) + "-" + buckets;
+    }
+}
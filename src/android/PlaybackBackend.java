@@ -0,0 +1,78 @@
+package org.apache.cordova.media;
+
+import java.io.FileDescriptor;
+import java.io.IOException;
+
+/**
+ * The engine an AudioPlayer drives, so AudioPlayer does not depend on android.media.MediaPlayer directly.
+ * Methods follow the MediaPlayer contract of the same name and are only called from the player's
+ * serial executor, except prepareAsync which runs on the handler's prepare executor.
+ */
+interface PlaybackBackend {
+
+    /**
+     * Callbacks of a backend, may arrive on any thread.
+     */
+    interface Listener {
+        void onPrepared();
+        void onCompletion();
+        void onError(int what, int extra);
+        void onSeekComplete();
+        /**
+         * Percent of a streamed source downloaded so far.
+         */
+        void onBufferingUpdate(int percent);
+        /**
+         * Playback stopped to wait for data, or resumed after waiting.
+         */
+        void onStall(boolean stalled);
+    }
+
+    void setListener(Listener listener);
+
+    void setDataSource(String path) throws IOException;
+
+    void setDataSource(FileDescriptor fd) throws IOException;
+
+    void setDataSource(FileDescriptor fd, long offset, long length) throws IOException;
+
+    /**
+     * A clip of a memory-mapped AudioBank, read from the mapping where the platform supports MediaDataSource.
+     */
+    void setDataSource(AudioBank.Clip clip) throws IOException;
+
+    void prepareAsync();
+
+    void start();
+
+    void pause();
+
+    void seekTo(int milliseconds);
+
+    /**
+     * Seek for scrubbing, fast lands on a nearby sync frame where the backend supports it.
+     */
+    void seekTo(int milliseconds, boolean fast);
+
+    int getCurrentPosition();
+
+    int getDuration();
+
+    /**
+     * Position in usec at System.nanoTime() nanoTime, from the audio output timestamp where the backend has one.
+     */
+    long getMediaTimeUs(long nanoTime);
+
+    void setVolume(float volume);
+
+    /**
+     * Start next the moment this backend completes, null removes it.
+     * @throws IllegalArgumentException if next is of another backend type
+     */
+    void setNext(PlaybackBackend next);
+
+    /**
+     * Give up the backend, it is not used again afterwards.
+     */
+    void release();
+}
@@ -0,0 +1,219 @@
+package org.apache.cordova.media;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latency histograms of the plugin, reported by the getMetrics action.
+ * Recording is a few atomic increments so it stays enabled in production builds.
+ */
+class PlaybackMetrics {
+
+    // Upper bounds in msec of the histogram buckets, the last bucket holds everything above
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+    /**
+     * Fixed bucket latency histogram, percentiles are reported as the upper bound of their bucket.
+     */
+    static final class Histogram {
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong sum = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * @param start			System.nanoTime() when the measured operation began
+         */
+        void record(long start) {
+            long millis = (System.nanoTime() - start) / 1000000L;
+            int bucket = 0;
+            while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) bucket++;
+            buckets.incrementAndGet(bucket);
+            count.incrementAndGet();
+            sum.addAndGet(millis);
+            long previous;
+            while (millis > (previous = max.get()) && !max.compareAndSet(previous, millis)) { }
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+            count.set(0);
+            sum.set(0);
+            max.set(0);
+        }
+
+        JSONObject toJSON() throws JSONException {
+            JSONObject json = new JSONObject();
+            JSONArray counts = new JSONArray();
+            for (int i = 0; i < buckets.length(); i++) counts.put(buckets.get(i));
+            long total = count.get();
+            json.put("count", total);
+            json.put("mean", total == 0 ? 0 : (double) sum.get() / total);
+            json.put("max", max.get());
+            json.put("p50", percentile(0.5));
+            json.put("p90", percentile(0.9));
+            json.put("p99", percentile(0.99));
+            json.put("buckets", counts);
+            return json;
+        }
+
+        private long percentile(double fraction) {
+            long total = count.get();
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * fraction);
+            long seen = 0;
+            for (int i = 0; i < BOUNDS.length; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return BOUNDS[i];
+            }
+            return max.get();
+        }
+    }
+
+    final Histogram load = new Histogram();     // blocking part of opening a source, before prepareAsync returns
+    final Histogram prepare = new Histogram();  // player created until prepared
+    final Histogram start = new Histogram();    // play requested until MediaPlayer.start()
+    final Histogram seek = new Histogram();     // seekTo until seek complete
+
+    private final AtomicLong playersCreated = new AtomicLong();
+    private final AtomicLong playersReleased = new AtomicLong();
+    private final AtomicLong playersDemoted = new AtomicLong();     // backends released by idle eviction
+    private final AtomicLong playersRehydrated = new AtomicLong();
+    private final AtomicLong stalls = new AtomicLong();             // playback waiting for a stream
+    private final AtomicLong variantSwitches = new AtomicLong();    // switches to a lower bitrate variant
+    private final AtomicLong driftCorrections = new AtomicLong();   // group members sought back in line
+    private final AtomicLong statusEvents = new AtomicLong();   // status and position events, batched or not
+    private final AtomicLong messages = new AtomicLong();       // plugin results sent on the message channel
+    private final ConcurrentHashMap<Integer, AtomicLong> errors = new ConcurrentHashMap<Integer, AtomicLong>();
+    private volatile long since = System.nanoTime();
+
+    void onPlayerCreated() {
+        playersCreated.incrementAndGet();
+    }
+
+    void onPlayerReleased() {
+        playersReleased.incrementAndGet();
+    }
+
+    void onPlayerDemoted() {
+        playersDemoted.incrementAndGet();
+    }
+
+    void onPlayerRehydrated() {
+        playersRehydrated.incrementAndGet();
+    }
+
+    void onStall() {
+        stalls.incrementAndGet();
+    }
+
+    void onVariantSwitch() {
+        variantSwitches.incrementAndGet();
+    }
+
+    void onDriftCorrection() {
+        driftCorrections.incrementAndGet();
+    }
+
+    void onStatusEvents(int count) {
+        statusEvents.addAndGet(count);
+    }
+
+    void onMessage() {
+        messages.incrementAndGet();
+    }
+
+    /**
+     * @param code				MediaPlayer onError what code, or the MediaError code sent to JavaScript
+     */
+    void onError(int code) {
+        AtomicLong counter = errors.get(code);
+        if (counter == null) {
+            AtomicLong created = new AtomicLong();
+            counter = errors.putIfAbsent(code, created);
+            if (counter == null) counter = created;
+        }
+        counter.incrementAndGet();
+    }
+
+    void reset() {
+        load.reset();
+        prepare.reset();
+        start.reset();
+        seek.reset();
+        playersCreated.set(0);
+        playersReleased.set(0);
+        playersDemoted.set(0);
+        playersRehydrated.set(0);
+        stalls.set(0);
+        variantSwitches.set(0);
+        driftCorrections.set(0);
+        statusEvents.set(0);
+        messages.set(0);
+        errors.clear();
+        since = System.nanoTime();
+    }
+
+    /**
+     * @param players			Live AudioPlayers
+     * @param dormant			Live AudioPlayers whose backend was released by idle eviction
+     * @param mediaPlayers		MediaPlayer instances, held by players or idle in the pool
+     * @param mixerVoices		Players decoding into the software mixer
+     * @param fakePlayers		Players on the fake backend
+     * @param paused			Players waiting for a phone call or focus loss to end
+     */
+    JSONObject toJSON(int players, int dormant, int mediaPlayers, int mixerVoices, int fakePlayers, int paused) throws JSONException {
+        double seconds = Math.max((System.nanoTime() - since) / 1e9, 0.001);
+        JSONObject json = new JSONObject();
+        json.put("seconds", seconds);
+        json.put("players", players);
+        json.put("dormantPlayers", dormant);
+        json.put("mediaPlayers", mediaPlayers);
+        json.put("mixerVoices", mixerVoices);
+        json.put("fakePlayers", fakePlayers);
+        json.put("pausedPlayers", paused);
+        json.put("playersCreated", playersCreated.get());
+        json.put("playersReleased", playersReleased.get());
+        json.put("playersDemoted", playersDemoted.get());
+        json.put("playersRehydrated", playersRehydrated.get());
+        json.put("stalls", stalls.get());
+        json.put("variantSwitches", variantSwitches.get());
+        json.put("driftCorrections", driftCorrections.get());
+        json.put("statusEvents", statusEvents.get());
+        json.put("eventsPerSecond", statusEvents.get() / seconds);
+        json.put("messages", messages.get());
+        json.put("messagesPerSecond", messages.get() / seconds);
+
+        // process wide, for soak tests to compare against a baseline
+        Runtime runtime = Runtime.getRuntime();
+        json.put("heapUsed", runtime.totalMemory() - runtime.freeMemory());
+        String[] descriptors = new File("/proc/self/fd").list();
+        json.put("fileDescriptors", descriptors == null ? -1 : descriptors.length);
+
+        JSONObject errorCounts = new JSONObject();
+        long errorTotal = 0;
+        for (Map.Entry<Integer, AtomicLong> entry : errors.entrySet()) {
+            errorCounts.put(entry.getKey().toString(), entry.getValue().get());
+            errorTotal += entry.getValue().get();
+        }
+        json.put("errors", errorTotal);
+        json.put("errorsByCode", errorCounts);
+
+        JSONObject latency = new JSONObject();
+        latency.put("load", load.toJSON());
+        latency.put("prepare", prepare.toJSON());
+        latency.put("start", start.toJSON());
+        latency.put("seek", seek.toJSON());
+        JSONArray bounds = new JSONArray();
+        for (long bound : BOUNDS) bounds.put(bound);
+        latency.put("bucketBounds", bounds);
+        json.put("latency", latency);
+        return json;
+    }
+}
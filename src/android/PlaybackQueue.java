@@ -0,0 +1,139 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import java.util.ArrayList;
+
+/**
+ * Ordered list of player ids played back to back without gaps.
+ * While an entry plays, the following one is prepared and chained with MediaPlayer.setNextMediaPlayer,
+ * so the transition happens inside the media framework instead of round tripping through JavaScript.
+ * The queue position is reported as a MEDIA_QUEUE status event of the entry that became current.
+ */
+class PlaybackQueue {
+
+    private static final String LOG_TAG = "PlaybackQueue";
+
+    private final AudioHandler handler;
+    private final ArrayList<String> ids = new ArrayList<String>();
+    private int index = 0;                  // position of the current entry
+    private AudioPlayer chained = null;     // current entry whose next player is set
+
+    PlaybackQueue(AudioHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Replace the queue, the first entry becomes current.
+     */
+    synchronized void setQueue(ArrayList<String> entries) {
+        unchain();
+        ids.clear();
+        ids.addAll(entries);
+        index = 0;
+        reportPosition();
+        chain();
+    }
+
+    synchronized void enqueue(String id) {
+        ids.add(id);
+        if (ids.size() - 1 == index + 1) chain();
+    }
+
+    synchronized void clear() {
+        unchain();
+        ids.clear();
+        index = 0;
+    }
+
+    /**
+     * Stop the current entry and start the next one.
+     */
+    synchronized void skip() {
+        AudioPlayer current = player(index);
+        unchain();
+        if (current != null) current.post(current::stopPlaying);
+        if (index >= ids.size()) return;
+        index++;
+        AudioPlayer next = player(index);
+        if (next != null) {
+            next.post(next::requestPlay);
+            handler.getAudioFocus();
+        }
+        reportPosition();
+        chain();
+    }
+
+    /**
+     * Called by AudioHandler when a player reached its end, advances if it was the current entry.
+     * A chained next player has already been started by MediaPlayer, one that was not prepared in time
+     * or whose backend cannot chain is started here.
+     */
+    synchronized void onCompleted(AudioPlayer audio) {
+        if (index >= ids.size() || !ids.get(index).equals(audio.getId())) return;
+        boolean wasChained = chained == audio;
+        chained = null;
+        index++;
+        AudioPlayer next = player(index);
+        if (!wasChained && next != null) {
+            next.post(next::requestPlay);
+            handler.getAudioFocus();
+        }
+        reportPosition();
+        chain();
+    }
+
+    /**
+     * Called by AudioHandler before a player is destroyed, so no MediaPlayer stays chained to a released one.
+     */
+    synchronized void remove(String id) {
+        int position = ids.indexOf(id);
+        if (position < 0) return;
+        if (position == index || position == index + 1) unchain();
+        ids.remove(position);
+        if (position < index) index--;
+        chain();
+    }
+
+    synchronized boolean contains(String id) {
+        return ids.contains(id);
+    }
+
+    synchronized int size() {
+        return ids.size();
+    }
+
+    private AudioPlayer player(int position) {
+        if (position < 0 || position >= ids.size()) return null;
+        return handler.players.get(ids.get(position));
+    }
+
+    // Chain the current entry to the next one once both are prepared
+    private void chain() {
+        AudioPlayer current = player(index);
+        AudioPlayer next = player(index + 1);
+        if (current == null || next == null) return;
+        current.whenReady((c, currentPrepared) -> next.whenReady((n, nextPrepared) -> {
+            synchronized (PlaybackQueue.this) {
+                if (!currentPrepared || !nextPrepared) return;
+                if (player(index) != c || player(index + 1) != n) return;
+                if (c.setNext(n)) chained = c;
+            }
+        }));
+    }
+
+    private void unchain() {
+        if (chained != null) {
+            chained.setNext(null);
+            chained = null;
+        }
+    }
+
+    private void reportPosition() {
+        if (index >= ids.size()) {
+            LOG.d(LOG_TAG, "Reached the end of the queue");
+            return;
+        }
+        handler.sendStatus(ids.get(index), AudioPlayer.MEDIA_QUEUE, index);
+    }
+}
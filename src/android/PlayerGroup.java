@@ -0,0 +1,218 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Players started, paused and sought together, such as the stems of one song.
+ * A group command is posted to every member's own executor and all of them meet at a barrier
+ * right before touching their backend, so members start within microseconds of each other
+ * instead of whenever each prepare happened to finish.
+ * With drift correction, running members are compared against the first one on the timestamps
+ * of the audio output and a member off by more than DRIFT_TOLERANCE is sought back in line.
+ * A seek lands only roughly where asked and its timestamps take a while to steady, so the tolerance is wide
+ * and a corrected member is left alone for SETTLE_TIME instead of being sought again and again.
+ */
+class PlayerGroup {
+
+    private static final String LOG_TAG = "PlayerGroup";
+    private static final long BARRIER_TIMEOUT = 1000; // msec a member waits for the others before acting alone
+    private static final int DRIFT_INTERVAL = 500;  // msec between drift checks
+    private static final int DRIFT_TOLERANCE = 80;  // msec
+    private static final long SETTLE_TIME = 3000;   // msec after a correction before a member is checked again
+    private static final long SEEK_TIMEOUT = 2000;  // msec a group seek waits for the members' seeks to complete
+
+    /**
+     * What a group command does to each member, on the member's executor.
+     */
+    interface MemberCommand {
+        void apply(AudioPlayer audio);
+    }
+
+    private final AudioHandler handler;
+    private final CopyOnWriteArrayList<AudioPlayer> members; // read by drift checks on the scheduler
+    private final boolean correctDrift;
+    private final ConcurrentHashMap<AudioPlayer, Long> corrected = new ConcurrentHashMap<AudioPlayer, Long>(); // System.nanoTime() of the last correction
+    private final AtomicInteger generation = new AtomicInteger(); // of the latest group command, ends a seek waiting to restart
+    private ScheduledFuture<?> driftTask;
+
+    PlayerGroup(AudioHandler handler, List<AudioPlayer> members, boolean correctDrift) {
+        this.handler = handler;
+        this.members = new CopyOnWriteArrayList<AudioPlayer>(members);
+        this.correctDrift = correctDrift;
+    }
+
+    boolean contains(AudioPlayer audio) {
+        return members.contains(audio);
+    }
+
+    /**
+     * Drop a released player.
+     * @return 					true if no member is left
+     */
+    boolean remove(AudioPlayer audio) {
+        members.remove(audio);
+        corrected.remove(audio);
+        return members.isEmpty();
+    }
+
+    /**
+     * Whether this group is made of exactly these players.
+     */
+    boolean isOf(List<AudioPlayer> players) {
+        return members.size() == players.size() && members.containsAll(players);
+    }
+
+    /**
+     * Start every member together once all of them are prepared, members that fail to prepare are left out.
+     */
+    void start() {
+        List<AudioPlayer> live = live();
+        if (live.isEmpty()) return;
+        generation.incrementAndGet();
+        AtomicInteger pending = new AtomicInteger(live.size());
+        ArrayList<AudioPlayer> ready = new ArrayList<AudioPlayer>(live.size());
+        for (AudioPlayer audio : live) {
+            audio.whenReady((member, prepared) -> {
+                synchronized (ready) {
+                    if (prepared) ready.add(member);
+                }
+                if (pending.decrementAndGet() > 0) return;
+                together(ready, AudioPlayer::requestPlay);
+                startDriftTask();
+            });
+        }
+    }
+
+    void pause() {
+        generation.incrementAndGet();
+        stopDriftTask();
+        together(live(), AudioPlayer::pausePlaying);
+    }
+
+    /**
+     * Seek every member, a playing group is paused, sought and started again together once every seek completed
+     * or after SEEK_TIMEOUT, whichever comes first.
+     */
+    void seek(int milliseconds) {
+        List<AudioPlayer> live = live();
+        if (live.isEmpty()) return;
+        int seekGeneration = generation.incrementAndGet();
+        boolean running = false;
+        for (AudioPlayer audio : live) {
+            running |= audio.getState() == AudioPlayer.STATE.MEDIA_RUNNING.ordinal();
+        }
+        if (!running) {
+            together(live, audio -> audio.seekToPlaying(milliseconds));
+            return;
+        }
+        AtomicInteger pending = new AtomicInteger(live.size());
+        Runnable restart = () -> {
+            // only once, and not after the group was paused, sought or started again meanwhile
+            if (!generation.compareAndSet(seekGeneration, seekGeneration + 1)) return;
+            together(live(), AudioPlayer::requestPlay);
+            startDriftTask();
+        };
+        together(live, audio -> {
+            audio.pausePlaying();
+            audio.seekThen(milliseconds, () -> {
+                if (pending.decrementAndGet() == 0) restart.run();
+            });
+        });
+        handler.schedule(() -> {
+            if (generation.get() != seekGeneration) return;
+            LOG.w(LOG_TAG, "Group seek did not complete on every member, starting anyway");
+            restart.run();
+        }, SEEK_TIMEOUT);
+    }
+
+    /**
+     * Stop drift correction, called when the group is replaced or the plugin destroyed.
+     */
+    void dispose() {
+        stopDriftTask();
+    }
+
+    private List<AudioPlayer> live() {
+        ArrayList<AudioPlayer> live = new ArrayList<AudioPlayer>(members.size());
+        for (AudioPlayer audio : members) {
+            if (!audio.isDestroyed()) live.add(audio);
+        }
+        return live;
+    }
+
+    // Run command on every member's executor, each one waits at the barrier until all are about to run it
+    private static void together(List<AudioPlayer> players, MemberCommand command) {
+        if (players.isEmpty()) return;
+        CyclicBarrier barrier = new CyclicBarrier(players.size());
+        for (AudioPlayer audio : players) {
+            audio.post(() -> {
+                try {
+                    barrier.await(BARRIER_TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (BrokenBarrierException | TimeoutException e) {
+                    LOG.w(LOG_TAG, "Group member " + audio.getId() + " proceeds without the others");
+                }
+                if (!audio.isDestroyed()) command.apply(audio);
+            });
+        }
+    }
+
+    private synchronized void startDriftTask() {
+        if (!correctDrift || members.size() < 2) return;
+        if (driftTask == null || driftTask.isDone()) {
+            driftTask = handler.scheduleAtFixedRate(this::checkDrift, DRIFT_INTERVAL);
+        }
+    }
+
+    private synchronized void stopDriftTask() {
+        if (driftTask != null) {
+            driftTask.cancel(false);
+            driftTask = null;
+        }
+    }
+
+    // Runs on the handler's scheduler, reads positions like its position ticker does
+    private void checkDrift() {
+        long now = System.nanoTime();
+        AudioPlayer leader = null;
+        long leaderUs = 0;
+        for (AudioPlayer audio : members) {
+            long us = audio.getMediaTimeUs(now);
+            if (us < 0) continue;
+            if (leader == null) {
+                leader = audio;
+                leaderUs = us;
+            } else if (Math.abs(us - leaderUs) > DRIFT_TOLERANCE * 1000L && settled(audio, now)) {
+                corrected.put(audio, now);
+                AudioPlayer reference = leader;
+                audio.post(() -> {
+                    long target = reference.getMediaTimeUs(System.nanoTime());
+                    if (target >= 0) audio.seekToPlaying((int) (target / 1000));
+                });
+                handler.metrics.onDriftCorrection();
+            }
+        }
+        // nothing plays anymore, a new start or seek restarts the checks
+        if (leader == null) stopDriftTask();
+    }
+
+    private boolean settled(AudioPlayer audio, long now) {
+        Long last = corrected.get(audio);
+        if (last == null) return true;
+        if (now - last < TimeUnit.MILLISECONDS.toNanos(SETTLE_TIME)) return false;
+        corrected.remove(audio);
+        return true;
+    }
+}
@@ -0,0 +1,180 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.LOG;
+import org.apache.cordova.PluginResult;
+import android.content.res.AssetFileDescriptor;
+import android.media.AudioAttributes;
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.os.Build;
+
+import java.util.HashMap;
+
+/**
+ * Short sound effects decoded once into a shared SoundPool and triggered fire-and-forget.
+ * Samples are keyed by the same ids as AudioPlayers, so the setVolume and release actions work on them too.
+ */
+class SamplePool implements SoundPool.OnLoadCompleteListener {
+
+    private static final String LOG_TAG = "SamplePool";
+    private static final int LOAD_OK = 0;
+    // MediaError codes reported to the error callback
+    private static final int MEDIA_ERR_ABORTED = 1;
+    private static final int MEDIA_ERR_DECODE = 3;
+    private static final int MEDIA_ERR_NONE_SUPPORTED = 4;
+
+    private final AudioHandler handler;
+    private final int maxStreams;
+    private SoundPool soundPool = null;     // created with the first sample
+    private final HashMap<String, Sample> samples = new HashMap<String, Sample>();
+    private final HashMap<Integer, Sample> loading = new HashMap<Integer, Sample>(); // by SoundPool sound id
+
+    private static final class Sample {
+        final String id;
+        int soundId;
+        int streamId = 0;                   // last started stream, used by stop and setVolume
+        float volume = 1f;
+        boolean loaded = false;
+        CallbackContext loadCallback;
+
+        Sample(String id) {
+            this.id = id;
+        }
+    }
+
+    SamplePool(AudioHandler handler, int maxStreams) {
+        this.handler = handler;
+        this.maxStreams = Math.max(1, maxStreams);
+    }
+
+    /**
+     * Decode a local file or /android_asset/ path into the pool, callbackContext is answered once it is loaded.
+     */
+    synchronized void load(String id, String file, CallbackContext callbackContext) {
+        if (samples.containsKey(id)) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, id));
+            return;
+        }
+        if (file.contains("http://") || file.contains("https://") || file.contains("rtsp://")) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, MEDIA_ERR_NONE_SUPPORTED));
+            return;
+        }
+        Sample sample = new Sample(id);
+        sample.loadCallback = callbackContext;
+        try {
+            if (file.startsWith("/android_asset/")) {
+                AssetFileDescriptor fd = handler.cordova.getActivity().getAssets().openFd(file.substring(15));
+                sample.soundId = pool().load(fd, 1);
+                fd.close();
+            } else if (file.startsWith(AudioBank.SCHEME)) {
+                sample.soundId = handler.loadBankSample(pool(), file);
+            } else {
+                sample.soundId = pool().load(file, 1);
+            }
+        } catch (Exception e) {
+            LOG.e(LOG_TAG, "Failed to load sample " + file, e);
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, MEDIA_ERR_ABORTED));
+            return;
+        }
+        samples.put(id, sample);
+        loading.put(sample.soundId, sample);
+    }
+
+    @Override
+    public void onLoadComplete(SoundPool pool, int soundId, int status) {
+        CallbackContext callbackContext;
+        String id;
+        synchronized (this) {
+            Sample sample = loading.remove(soundId);
+            if (sample == null) return;
+            sample.loaded = status == LOAD_OK;
+            callbackContext = sample.loadCallback;
+            sample.loadCallback = null;
+            id = sample.id;
+            if (!sample.loaded) {
+                samples.remove(id);
+                pool.unload(soundId);
+            }
+        }
+        if (callbackContext == null) return;
+        if (status == LOAD_OK) {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.OK, id));
+        } else {
+            callbackContext.sendPluginResult(new PluginResult(PluginResult.Status.ERROR, MEDIA_ERR_DECODE));
+        }
+    }
+
+    /**
+     * Start a new stream of the sample.
+     * @return 					false if the sample is unknown or still loading
+     */
+    synchronized boolean play(String id) {
+        Sample sample = samples.get(id);
+        if (sample == null || !sample.loaded) return false;
+        sample.streamId = soundPool.play(sample.soundId, sample.volume, sample.volume, 1, 0, 1f);
+        return sample.streamId != 0;
+    }
+
+    synchronized boolean stop(String id) {
+        Sample sample = samples.get(id);
+        if (sample == null) return false;
+        if (sample.streamId != 0) soundPool.stop(sample.streamId);
+        sample.streamId = 0;
+        return true;
+    }
+
+    /**
+     * Set the volume of future streams and of the last started one.
+     */
+    synchronized boolean setVolume(String id, float volume) {
+        Sample sample = samples.get(id);
+        if (sample == null) return false;
+        sample.volume = volume;
+        if (sample.streamId != 0) soundPool.setVolume(sample.streamId, volume, volume);
+        return true;
+    }
+
+    synchronized boolean contains(String id) {
+        return samples.containsKey(id);
+    }
+
+    synchronized boolean unload(String id) {
+        Sample sample = samples.remove(id);
+        if (sample == null) return false;
+        loading.remove(sample.soundId);
+        if (sample.streamId != 0) soundPool.stop(sample.streamId);
+        soundPool.unload(sample.soundId);
+        return true;
+    }
+
+    /**
+     * Unload every sample and release the SoundPool.
+     */
+    synchronized void release() {
+        samples.clear();
+        loading.clear();
+        if (soundPool != null) {
+            soundPool.release();
+            soundPool = null;
+        }
+    }
+
+    private SoundPool pool() {
+        if (soundPool == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                soundPool = new SoundPool.Builder()
+                        .setMaxStreams(maxStreams)
+                        .setAudioAttributes(new AudioAttributes.Builder()
+                                .setUsage(AudioAttributes.USAGE_GAME)
+                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                                .build())
+                        .build();
+            } else {
+                soundPool = new SoundPool(maxStreams, AudioManager.STREAM_MUSIC, 0);
+            }
+            soundPool.setOnLoadCompleteListener(this);
+        }
+        return soundPool;
+    }
+}
@@ -0,0 +1,52 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs tasks one at a time in submission order on a shared pool.
+ * Each AudioPlayer owns one, so its commands and MediaPlayer callbacks never run concurrently
+ * while different players still run in parallel. Submitting is lock-free.
+ */
+class SerialExecutor implements Executor {
+
+    private static final String LOG_TAG = "SerialExecutor";
+
+    private final Executor pool;
+    private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Runnable drain = this::drain;
+
+    SerialExecutor(Executor pool) {
+        this.pool = pool;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            pool.execute(drain);
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.e(LOG_TAG, "Player command failed", e);
+            }
+        }
+        scheduled.set(false);
+        // a task may have been offered after the last poll but before the flag was cleared
+        if (!tasks.isEmpty()) schedule();
+    }
+}
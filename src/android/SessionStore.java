@@ -0,0 +1,136 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snapshot of the players written when the app pauses or is destroyed, read back by the restoreSession action.
+ * The file is a version, an entry count and one record per player: id, source, position, volume and state.
+ * A snapshot left by the previous launch is not overwritten until the app restored or discarded it,
+ * otherwise pausing before restoring would replace it with the few players created since.
+ * That protection lasts one launch: a snapshot a launch did not claim is expired by the next one, so an app
+ * that never restores keeps saving.
+ */
+class SessionStore {
+
+    private static final String LOG_TAG = "SessionStore";
+    private static final int VERSION = 1;
+
+    /**
+     * What restoring one player needs.
+     */
+    static final class Entry {
+        final String id;
+        final String source;
+        final int position;                 // msec
+        final float volume;
+        final int state;                    // AudioPlayer.STATE ordinal
+
+        Entry(String id, String source, int position, float volume, int state) {
+            this.id = id;
+            this.source = source;
+            this.position = position;
+            this.volume = volume;
+            this.state = state;
+        }
+    }
+
+    private final File file;
+    private final File offered;             // exists once a launch skipped a save to keep the snapshot unclaimed
+    private boolean unclaimed;              // the previous launch's snapshot was neither restored nor discarded yet
+    private boolean expired;                // the snapshot was already left unclaimed by a launch before the previous one
+
+    SessionStore(File file) {
+        this.file = file;
+        this.offered = new File(file.getPath() + ".offered");
+        boolean exists = file.exists();
+        this.expired = exists && offered.exists();
+        this.unclaimed = exists && !expired;
+    }
+
+    /**
+     * Replace the snapshot, an empty list deletes it. Does nothing while the previous snapshot is unclaimed.
+     */
+    synchronized void save(List<Entry> entries) {
+        if (unclaimed) {
+            try {
+                offered.createNewFile();
+            } catch (IOException e) {
+                LOG.w(LOG_TAG, "Failed to mark session " + file + " as offered");
+            }
+            return;
+        }
+        expired = false;
+        offered.delete();
+        if (entries.isEmpty()) {
+            file.delete();
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                out.writeInt(VERSION);
+                out.writeInt(entries.size());
+                for (Entry entry : entries) {
+                    out.writeUTF(entry.id);
+                    out.writeUTF(entry.source);
+                    out.writeInt(entry.position);
+                    out.writeFloat(entry.volume);
+                    out.writeByte(entry.state);
+                }
+            } finally {
+                out.close();
+            }
+            if (!tmp.renameTo(file)) throw new IOException("Failed to rename " + tmp);
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to save session", e);
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Entries of the last snapshot, empty when there is none, it expired or it is unreadable.
+     */
+    synchronized List<Entry> load() {
+        unclaimed = false;
+        ArrayList<Entry> entries = new ArrayList<Entry>();
+        if (expired || !file.exists()) return entries;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != VERSION) return entries;
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    entries.add(new Entry(in.readUTF(), in.readUTF(), in.readInt(), in.readFloat(), in.readByte()));
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Ignoring unreadable session " + file);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    /**
+     * Delete the snapshot without restoring it, later saves replace it again.
+     */
+    synchronized void discard() {
+        unclaimed = false;
+        expired = false;
+        offered.delete();
+        file.delete();
+    }
+}
@@ -0,0 +1,170 @@
+package org.apache.cordova.media;
+
+import org.apache.cordova.LOG;
+import android.content.Context;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.PowerManager;
+import android.os.Process;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
+/**
+ * Mixes every MixerBackend voice into a single AudioTrack on one real-time thread.
+ * Voices are decoded ahead into their own ring buffers on worker threads, the mix loop only reads
+ * them and works on buffers allocated once, so it never allocates or blocks on anything but the track.
+ * One partial wake lock is held while anything is audible, instead of one per MediaPlayer.
+ */
+class SoftwareMixer implements Runnable {
+
+    private static final String LOG_TAG = "SoftwareMixer";
+    static final int BLOCK_FRAMES = 256;    // frames mixed per AudioTrack write, about 5 msec
+    private static final int IDLE_WAIT = 1000; // msec between checks while nothing plays
+
+    final int sampleRate;                   // output rate, voices are resampled to it
+    final Executor events;                  // delivers callbacks of voices without a decoder thread
+    private final PowerManager.WakeLock wakeLock;
+    private volatile MixerBackend[] voices = new MixerBackend[0]; // copy on write
+    private final float[] mix = new float[BLOCK_FRAMES * 2];
+    private final short[] out = new short[BLOCK_FRAMES * 2];
+    private final Object idle = new Object();
+    private Thread thread = null;
+    private volatile boolean running = false;
+
+    SoftwareMixer(Context context, Executor events) {
+        this.events = events;
+        this.sampleRate = AudioTrack.getNativeOutputSampleRate(AudioManager.STREAM_MUSIC);
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        this.wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "cordova-media:mixer");
+        this.wakeLock.setReferenceCounted(false);
+    }
+
+    /**
+     * Start mixing a prepared voice, starts the mix thread on first use.
+     */
+    synchronized void add(MixerBackend voice) {
+        MixerBackend[] current = voices;
+        MixerBackend[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = voice;
+        voices = updated;
+        if (thread == null) {
+            running = true;
+            thread = new Thread(this, LOG_TAG);
+            thread.start();
+        }
+    }
+
+    synchronized void remove(MixerBackend voice) {
+        MixerBackend[] current = voices;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] != voice) continue;
+            MixerBackend[] updated = new MixerBackend[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, i);
+            System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+            voices = updated;
+            return;
+        }
+    }
+
+    /**
+     * Called when a voice starts playing, wakes the mix thread if it is idle.
+     */
+    void wake() {
+        synchronized (idle) {
+            idle.notify();
+        }
+    }
+
+    /**
+     * Stop the mix thread and release the AudioTrack, voices are released by their players.
+     */
+    void release() {
+        Thread mixThread;
+        synchronized (this) {
+            running = false;
+            mixThread = thread;
+            thread = null;
+            voices = new MixerBackend[0];
+        }
+        wake();
+        if (mixThread == null) return;
+        try {
+            mixThread.join(IDLE_WAIT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_STEREO, AudioFormat.ENCODING_PCM_16BIT);
+        AudioTrack track = new AudioTrack(
+                new AudioAttributes.Builder()
+                        .setUsage(AudioAttributes.USAGE_MEDIA)
+                        .setContentType(AudioAttributes.CONTENT_TYPE_MUSIC)
+                        .build(),
+                new AudioFormat.Builder()
+                        .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                        .setSampleRate(sampleRate)
+                        .setChannelMask(AudioFormat.CHANNEL_OUT_STEREO)
+                        .build(),
+                Math.max(minBuffer, BLOCK_FRAMES * 4 * 4),
+                AudioTrack.MODE_STREAM,
+                AudioManager.AUDIO_SESSION_ID_GENERATE);
+        boolean audible = false;
+        try {
+            while (running) {
+                Arrays.fill(mix, 0f);
+                boolean active = false;
+                for (MixerBackend voice : voices) {
+                    active |= voice.mixInto(mix, BLOCK_FRAMES, sampleRate);
+                }
+                if (!active) {
+                    if (audible) {
+                        track.pause();
+                        wakeLock.release();
+                        audible = false;
+                    }
+                    waitForVoice();
+                    continue;
+                }
+                if (!audible) {
+                    wakeLock.acquire();
+                    track.play();
+                    audible = true;
+                }
+                for (int i = 0; i < mix.length; i++) {
+                    float sample = mix[i];
+                    if (sample > 1f) sample = 1f;
+                    else if (sample < -1f) sample = -1f;
+                    out[i] = (short) (sample * 32767f);
+                }
+                track.write(out, 0, out.length);
+            }
+        } catch (Exception e) {
+            LOG.e(LOG_TAG, "Mixer stopped", e);
+        } finally {
+            track.stop();
+            track.release();
+            if (wakeLock.isHeld()) wakeLock.release();
+        }
+    }
+
+    // Sleep until a voice starts, checked under the lock wake() notifies on so no start is missed
+    private void waitForVoice() {
+        synchronized (idle) {
+            for (MixerBackend voice : voices) {
+                if (voice.isPlaying()) return;
+            }
+            try {
+                idle.wait(IDLE_WAIT);
+            } catch (InterruptedException e) {
+                running = false;
+            }
+        }
+    }
+}
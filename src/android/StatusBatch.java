@@ -0,0 +1,114 @@
+package org.apache.cordova.media;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Collects status events per player during a short window and encodes them into one binary message.
+ * Position and duration events supersede earlier values of the same type and move to the end, so a position
+ * is never delivered before a state or seek event that was queued ahead of it. Every other event is kept in order.
+ *
+ * Layout (little endian), decoded by decodeStatusBatch in Media.js:
+ * 	u8 version, u16 players
+ * 	per player: u8 id length, id bytes, u16 events
+ * 	per event:  u8 msgType, f32 value
+ */
+class StatusBatch {
+
+    static final int VERSION = 1;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final LinkedHashMap<String, Events> pending = new LinkedHashMap<String, Events>();
+    private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+    private int count = 0;
+
+    // Pending events of one player, kept between windows so the arrays are reused
+    private static final class Events {
+        final byte[] id;
+        int count = 0;
+        byte[] types = new byte[4];
+        float[] values = new float[4];
+
+        Events(String id) {
+            this.id = id.getBytes(UTF8);
+        }
+    }
+
+    /**
+     * Queue an event.
+     * @return 					true if this is the first event of a new window, so the caller schedules a flush
+     */
+    synchronized boolean add(String id, int msgType, float value) {
+        Events events = pending.get(id);
+        if (events == null) {
+            events = new Events(id);
+            pending.put(id, events);
+        }
+        if (msgType == AudioPlayer.MEDIA_POSITION || msgType == AudioPlayer.MEDIA_DURATION) {
+            for (int i = 0; i < events.count; i++) {
+                if (events.types[i] == msgType) {
+                    int last = events.count - 1;
+                    System.arraycopy(events.types, i + 1, events.types, i, last - i);
+                    System.arraycopy(events.values, i + 1, events.values, i, last - i);
+                    events.types[last] = (byte) msgType;
+                    events.values[last] = value;
+                    return false;
+                }
+            }
+        }
+        if (events.count == events.types.length) {
+            events.types = Arrays.copyOf(events.types, events.count * 2);
+            events.values = Arrays.copyOf(events.values, events.count * 2);
+        }
+        events.types[events.count] = (byte) msgType;
+        events.values[events.count] = value;
+        events.count++;
+        return count++ == 0;
+    }
+
+    /**
+     * Encode and clear everything queued so far.
+     * @return 					the encoded batch, or null if nothing was queued
+     */
+    synchronized byte[] drain() {
+        if (count == 0) return null;
+        int players = 0;
+        int size = 3;
+        for (Iterator<Events> it = pending.values().iterator(); it.hasNext(); ) {
+            Events events = it.next();
+            if (events.count == 0) {
+                // idle for a whole window, most likely released
+                it.remove();
+                continue;
+            }
+            players++;
+            size += 3 + events.id.length + events.count * 5;
+        }
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        buffer.clear();
+        buffer.put((byte) VERSION);
+        buffer.putShort((short) players);
+        for (Events events : pending.values()) {
+            if (events.count == 0) continue;
+            buffer.put((byte) events.id.length);
+            buffer.put(events.id);
+            buffer.putShort((short) events.count);
+            for (int i = 0; i < events.count; i++) {
+                buffer.put(events.types[i]);
+                buffer.putFloat(events.values[i]);
+            }
+            events.count = 0;
+        }
+        count = 0;
+        byte[] message = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(message);
+        return message;
+    }
+}
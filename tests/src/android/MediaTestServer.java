@@ -0,0 +1,139 @@
+package org.apache.cordova.media.tests;
+
+import org.apache.cordova.CallbackContext;
+import org.apache.cordova.CordovaPlugin;
+import org.apache.cordova.LOG;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+/**
+ * Loopback HTTP origin for the media specs, serves a bundled asset so remote source handling such as the
+ * disk cache can be tested without the network. Every request gets the whole asset with a fixed ETag.
+ */
+public class MediaTestServer extends CordovaPlugin implements Runnable {
+
+    private static final String LOG_TAG = "MediaTestServer";
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private ServerSocket server = null;
+    private byte[] body = null;
+
+    @Override
+    public boolean execute(String action, JSONArray args, CallbackContext callbackContext) throws JSONException {
+        if (action.equals("start")) {
+            String asset = args.getString(0);
+            cordova.getThreadPool().execute(() -> {
+                try {
+                    callbackContext.success(start(asset));
+                } catch (IOException e) {
+                    callbackContext.error("Failed to serve " + asset + ": " + e.getMessage());
+                }
+            });
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Serve an asset, starts the server on first use.
+     * @return 					Url of the asset on the loopback interface
+     */
+    private synchronized String start(String asset) throws IOException {
+        InputStream in = cordova.getActivity().getAssets().open(asset);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) bytes.write(buffer, 0, n);
+            body = bytes.toByteArray();
+        } finally {
+            in.close();
+        }
+        if (server == null) {
+            server = new ServerSocket(0, 16, InetAddress.getByName("127.0.0.1"));
+            Thread accept = new Thread(this, LOG_TAG);
+            accept.setDaemon(true);
+            accept.start();
+        }
+        return "http://127.0.0.1:" + server.getLocalPort() + "/" + asset.substring(asset.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public void run() {
+        ServerSocket socket;
+        synchronized (this) {
+            socket = server;
+        }
+        while (!socket.isClosed()) {
+            try {
+                Socket client = socket.accept();
+                cordova.getThreadPool().execute(() -> handle(client));
+            } catch (IOException e) {
+                // closed by onDestroy()
+            }
+        }
+    }
+
+    private void handle(Socket client) {
+        byte[] served;
+        synchronized (this) {
+            served = body;
+        }
+        try {
+            InputStream in = client.getInputStream();
+            String requestLine = readLine(in);
+            if (requestLine == null) return;
+            // skip the headers, ranges are ignored
+            String line;
+            while ((line = readLine(in)) != null && !line.isEmpty());
+            OutputStream out = new BufferedOutputStream(client.getOutputStream());
+            String head = "HTTP/1.1 200 OK\r\n"
+                    + "Content-Type: audio/wav\r\n"
+                    + "Content-Length: " + served.length + "\r\n"
+                    + "ETag: \"" + served.length + "\"\r\n"
+                    + "Connection: close\r\n\r\n";
+            out.write(head.getBytes(ASCII));
+            if (!requestLine.startsWith("HEAD ")) out.write(served);
+            out.flush();
+        } catch (IOException e) {
+            // the client closed the connection early
+        } finally {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOG.d(LOG_TAG, "Failed to close connection");
+            }
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) >= 0 && c != '\n') {
+            if (c != '\r') line.append((char) c);
+        }
+        return c < 0 && line.length() == 0 ? null : line.toString();
+    }
+
+    @Override
+    public synchronized void onDestroy() {
+        if (server == null) return;
+        try {
+            server.close();
+        } catch (IOException e) {
+            LOG.w(LOG_TAG, "Failed to close server socket");
+        }
+        server = null;
+    }
+}
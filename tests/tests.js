@@ -28,6 +28,8 @@ var ACTUAL_PLAYBACK_TEST_TIMEOUT = 2 * 60 * 1000;
 
 var WEB_MP3_FILE = 'https://cordova.apache.org/downloads/BlueZedEx.mp3';
 var WEB_MP3_STREAM = 'https://cordova.apache.org/downloads/BlueZedEx.mp3';
+// bundled by tests/plugin.xml: 2 s of a 440 Hz tone, 8 kHz mono 16 bit
+var WAV_FILE = cordova.platformId === 'android' ? '/android_asset/www/media-tests/tone.wav' : 'media-tests/tone.wav';
 
 var isWindows = cordova.platformId === 'windows8' || cordova.platformId === 'windows';
 var isBrowser = cordova.platformId === 'browser';
@@ -511,6 +513,648 @@ exports.defineAutoTests = function () {
             media.play();
         });
 
+        it("media.spec.28 should contain a static setPositionInterval function", function () {
+            expect(Media.setPositionInterval).toBeDefined();
+            expect(typeof Media.setPositionInterval).toBe('function');
+        });
+
+        it("media.spec.29 should contain a crossfade function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.crossfade).toBeDefined();
+            expect(typeof media1.crossfade).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.30 should contain a static setEventBatching function", function () {
+            expect(Media.setEventBatching).toBeDefined();
+            expect(typeof Media.setEventBatching).toBe('function');
+        });
+
+        it("media.spec.31 should contain static player pool functions", function () {
+            expect(typeof Media.setPoolSize).toBe('function');
+            expect(typeof Media.getPoolStats).toBe('function');
+        });
+
+        it("media.spec.32 should contain a static preload function", function () {
+            expect(Media.preload).toBeDefined();
+            expect(typeof Media.preload).toBe('function');
+        });
+
+        it("media.spec.33 should contain static queue functions", function () {
+            expect(typeof Media.setQueue).toBe('function');
+            expect(typeof Media.enqueue).toBe('function');
+            expect(typeof Media.skip).toBe('function');
+            expect(typeof Media.clearQueue).toBe('function');
+        });
+
+        it("media.spec.34 should create a sample media with the play, setVolume and release functions", function () {
+            var media1 = new Media("dummy", null, null, null, null, { sample: true });
+            expect(typeof media1.play).toBe('function');
+            expect(typeof media1.setVolume).toBe('function');
+            expect(typeof media1.release).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.35 should contain static cache functions", function () {
+            expect(typeof Media.getCacheStats).toBe('function');
+            expect(typeof Media.clearCache).toBe('function');
+        });
+
+        it("media.spec.36 should contain a static batch function", function () {
+            expect(Media.batch).toBeDefined();
+            expect(typeof Media.batch).toBe('function');
+        });
+
+        it("media.spec.37 should contain static metrics functions", function () {
+            expect(typeof Media.getMetrics).toBe('function');
+            expect(typeof Media.resetMetrics).toBe('function');
+        });
+
+        it("media.spec.38 should contain PCM cache functions", function () {
+            var media1 = new Media("dummy");
+            expect(typeof Media.getPcmCacheStats).toBe('function');
+            expect(typeof Media.clearPcmCache).toBe('function');
+            expect(typeof media1.pinPcm).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.39 should contain a getPeaks function", function () {
+            expect(Media.getPeaks).toBeDefined();
+            expect(typeof Media.getPeaks).toBe('function');
+        });
+
+        it("media.spec.40 should contain a setScrubbing function", function () {
+            var media1 = new Media("dummy");
+            expect(media1.setScrubbing).toBeDefined();
+            expect(typeof media1.setScrubbing).toBe('function');
+            media1.release();
+        });
+
+        it("media.spec.41 should contain buffering getters", function () {
+            var media1 = new Media("dummy", null, null, null, null, { variants: ["dummy-low"] });
+            expect(typeof media1.getBuffered).toBe('function');
+            expect(typeof media1.getStalled).toBe('function');
+            expect(typeof media1.getVariant).toBe('function');
+            expect(media1.getStalled()).toBe(false);
+            expect(media1.getVariant()).toBe(0);
+            media1.release();
+        });
+
+        it("media.spec.42 should contain a restoreSession function", function () {
+            expect(Media.restoreSession).toBeDefined();
+            expect(typeof Media.restoreSession).toBe('function');
+            expect(typeof Media.discardSession).toBe('function');
+        });
+
+        it("media.spec.43 should contain group functions", function () {
+            expect(typeof Media.startGroup).toBe('function');
+            expect(typeof Media.pauseGroup).toBe('function');
+            expect(typeof Media.seekGroup).toBe('function');
+        });
+
+        it("media.spec.44 should contain recording functions", function () {
+            expect(typeof Media.startRecording).toBe('function');
+            expect(typeof Media.stopRecording).toBe('function');
+        });
+
+        it("media.spec.45 should return native players and descriptors to baseline after concurrent create and release churn", function (done) {
+            // runs on the bundled WAV_FILE, every other sequence on the fake backend that soaks the plugin without
+            // audio hardware, the others on the app's MediaBackend
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var SEQUENCES = 4,  // command sequences interleaved on the native side, each on its own players
+                ROUNDS = 500,   // per sequence
+                BATCH = 25,     // rounds before a sequence yields to the others
+                IDS = 8,        // players per sequence
+                FD_SLACK = 8,   // descriptors the WebView may open meanwhile
+                context = this;
+
+            Media.getMetrics(function (before) {
+                var start = Date.now(),
+                    running = SEQUENCES;
+
+                var sequence = function (live, options, round) {
+                    for (var end = Math.min(round + BATCH, ROUNDS); round < end; round++) {
+                        var slot = round % IDS,
+                            media = live[slot] || (live[slot] = new Media(WAV_FILE, null, null, null, null, options));
+                        media.play();
+                        media.seekTo(Math.floor(Math.random() * 2000));
+                        media.setVolume(Math.random());
+                        if (Math.random() < 0.5) {
+                            media.pause();
+                        }
+                        if (Math.random() < 0.5) {
+                            media.release();
+                            delete live[slot];
+                        }
+                    }
+                    if (round < ROUNDS) {
+                        setTimeout(sequence.bind(null, live, options, round), 0);
+                        return;
+                    }
+                    Object.keys(live).forEach(function (slot) {
+                        live[slot].release();
+                    });
+                    if (--running === 0) check();
+                };
+
+                // players are released on their own executors, wait until the native side drained
+                var check = function () {
+                    Media.getMetrics(function (after) {
+                        if (after.players > before.players && Date.now() - start < ACTUAL_PLAYBACK_TEST_TIMEOUT / 2) {
+                            setTimeout(check, 500);
+                            return;
+                        }
+                        var seconds = (Date.now() - start) / 1000;
+                        console.log('media.spec.45 ' + Math.round(SEQUENCES * ROUNDS * 5 / seconds) + ' operations/s, heap growth ' +
+                            Math.round((after.heapUsed - before.heapUsed) / 1024) + ' KB, file descriptors ' +
+                            before.fileDescriptors + ' -> ' + after.fileDescriptors);
+                        expect(after.players).toBe(before.players);
+                        expect(after.mediaPlayers).toBe(before.mediaPlayers);
+                        expect(after.fakePlayers).toBe(before.fakePlayers);
+                        expect(after.pausedPlayers).toBe(before.pausedPlayers);
+                        expect(after.fileDescriptors).not.toBeGreaterThan(before.fileDescriptors + FD_SLACK);
+                        done();
+                    }, failed.bind(null, done, 'Media.getMetrics - Error getting metrics', context));
+                };
+
+                for (var i = 0; i < SEQUENCES; i++) {
+                    sequence({}, i % 2 ? {} : {backend: 'fake'}, 0);
+                }
+            }, failed.bind(null, done, 'Media.getMetrics - Error getting metrics', context));
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.46 should contain bank functions", function () {
+            expect(typeof Media.loadBank).toBe('function');
+            expect(typeof Media.unloadBank).toBe('function');
+        });
+
+        it("media.spec.47 should contain a probeMetadata function", function () {
+            expect(Media.probeMetadata).toBeDefined();
+            expect(typeof Media.probeMetadata).toBe('function');
+        });
+
+        it("media.spec.48 should report per operation results of a batch and apply nothing of a rejected atomic batch", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this,
+                fail = failed.bind(null, done, 'Media.batch - Unexpected result', context);
+
+            Media.getMetrics(function (before) {
+                Media.batch([
+                    { action: 'create', id: 'spec48-atomic', args: [WAV_FILE] },
+                    { action: 'seekTo', id: 'spec48-missing', args: [0] }
+                ], true, fail, function (results) {
+                    expect(results).toEqual([true, false]);
+                    Media.getMetrics(function (after) {
+                        // the create was rolled back with the failing seek
+                        expect(after.players).toBe(before.players);
+                        Media.batch([
+                            { action: 'create', id: 'spec48-partial', args: [WAV_FILE] },
+                            { action: 'setVolume', id: 'spec48-missing', args: [0.5] },
+                            { action: 'release', id: 'spec48-partial' }
+                        ], false, function (results) {
+                            expect(results).toEqual([true, false, true]);
+                            done();
+                        }, fail);
+                    }, failed.bind(null, done, 'Media.getMetrics - Error getting metrics', context));
+                });
+            }, failed.bind(null, done, 'Media.getMetrics - Error getting metrics', context));
+        });
+
+        it("media.spec.49 should count a played player and its latencies in the metrics", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                media = null;
+            Media.resetMetrics();
+            var statusChange = function (statusCode) {
+                if (statusCode != Media.MEDIA_RUNNING || context.done) return;
+                Media.getMetrics(function (metrics) {
+                    expect(metrics.players).toBeGreaterThan(0);
+                    expect(metrics.playersCreated).toBeGreaterThan(0);
+                    expect(metrics.latency.prepare.count).toBeGreaterThan(0);
+                    expect(metrics.latency.start.count).toBeGreaterThan(0);
+                    expect(metrics.latency.start.max).not.toBeLessThan(0);
+                    expect(metrics.heapUsed).toBeGreaterThan(0);
+                    media.release();
+                    context.done = true;
+                    done();
+                }, failed.bind(null, done, 'Media.getMetrics - Error getting metrics', context));
+            };
+            media = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), statusChange);
+            media.play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.50 should probe the metadata of a local WAV file and report unreadable sources", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var missing = '/android_asset/www/media-tests/missing.wav';
+            Media.probeMetadata([WAV_FILE, missing], function (results) {
+                expect(results.length).toBe(2);
+                expect(results[0].src).toBe(WAV_FILE);
+                expect(results[0].duration).toBeCloseTo(2, 1);
+                expect(results[0].channels).toBe(1);
+                expect(results[0].sampleRate).toBe(8000);
+                expect(results[1].src).toBe(missing);
+                expect(results[1].error).toBeDefined();
+                done();
+            }, failed.bind(null, done, 'Media.probeMetadata - Error probing ' + WAV_FILE, this));
+        });
+
+        it("media.spec.51 should decode the peaks of a local WAV file", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            Media.getPeaks(WAV_FILE, 10, function (peaks) {
+                expect(peaks.done).toBe(true);
+                expect(peaks.buckets).toBe(10);
+                expect(peaks.duration).toBeCloseTo(2, 1);
+                expect(peaks.max.length).toBe(10);
+                // the tone has an amplitude of 16000 / 32768
+                for (var i = 0; i < 10; i++) {
+                    expect(peaks.max[i]).toBeGreaterThan(0.4);
+                    expect(peaks.max[i]).toBeLessThan(0.6);
+                    expect(peaks.min[i]).toBeLessThan(-0.4);
+                    expect(peaks.rms[i]).toBeGreaterThan(0.3);
+                }
+                done();
+            }, failed.bind(null, done, 'Media.getPeaks - Error decoding ' + WAV_FILE, this));
+        });
+
+        it("media.spec.52 should report preloaded players as ready and failed ones as not ready", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this,
+                media = new Media(WAV_FILE),
+                broken = new Media('/android_asset/www/media-tests/missing.wav'),
+                results = {};
+            Media.preload([media, broken], function (result) {
+                results[result.id] = result;
+                if (Object.keys(results).length < 2) return;
+                expect(results[media.id].ready).toBe(true);
+                expect(results[media.id].duration).toBeCloseTo(2, 1);
+                expect(results[broken.id].ready).toBe(false);
+                media.release();
+                broken.release();
+                done();
+            }, failed.bind(null, done, 'Media.preload - Error preloading', context));
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.53 should report the queue index when the queue is set and skipped", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var first = new Media(WAV_FILE),
+                second = new Media(WAV_FILE),
+                indexes = [];
+            Media.onQueueChange = function (index, media) {
+                indexes.push(index);
+                if (index === 0) {
+                    expect(media).toBe(first);
+                    Media.skip();
+                    return;
+                }
+                expect(index).toBe(1);
+                expect(media).toBe(second);
+                expect(Media.queueIndex).toBe(1);
+                expect(indexes).toEqual([0, 1]);
+                Media.onQueueChange = null;
+                Media.clearQueue();
+                first.release();
+                second.release();
+                done();
+            };
+            Media.setQueue([first, second]);
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.54 should push positions of a running player at the set interval", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                previous = Media._positionInterval,
+                pushes = 0,
+                media = null;
+            Media.setPositionInterval(100);
+            var statusChange = function (statusCode) {
+                if (statusCode != Media.MEDIA_RUNNING) return;
+                setTimeout(function () {
+                    if (context.done) return;
+                    expect(Media._positionInterval).toBe(100);
+                    expect(pushes).toBeGreaterThan(2);
+                    expect(media.getPosition()).toBeGreaterThan(0);
+                    media.release();
+                    Media.setPositionInterval(previous);
+                    context.done = true;
+                    done();
+                }, 1000);
+            };
+            media = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), statusChange, function () {
+                pushes++;
+            });
+            media.play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.55 should stop the faded out player and start the faded in one of a crossfade", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                from = null,
+                to = null,
+                stopped = false,
+                started = false;
+            var finish = function () {
+                if (!stopped || !started || context.done) return;
+                from.release();
+                to.release();
+                context.done = true;
+                done();
+            };
+            from = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), function (statusCode) {
+                if (statusCode == Media.MEDIA_RUNNING && !to._playing && !stopped) {
+                    from.crossfade(to, 0.5);
+                } else if (statusCode == Media.MEDIA_STOPPED) {
+                    stopped = true;
+                    finish();
+                }
+            });
+            to = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), function (statusCode) {
+                if (statusCode == Media.MEDIA_RUNNING) {
+                    started = true;
+                    finish();
+                }
+            });
+            from.play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.56 should deliver status changes while events are batched", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                media = null;
+            Media.setEventBatching(50);
+            media = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), function (statusCode) {
+                if (statusCode == Media.MEDIA_RUNNING) {
+                    media.pause();
+                } else if (statusCode == Media.MEDIA_PAUSED && !context.done) {
+                    expect(media.getPaused()).toBe(true);
+                    media.release();
+                    Media.setEventBatching(0);
+                    context.done = true;
+                    done();
+                }
+            });
+            media.play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.57 should trim the player pool to its new size", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this,
+                fail = failed.bind(null, done, 'Media.getPoolStats - Error getting pool statistics', context);
+            Media.setPoolSize(0);
+            Media.getPoolStats(function (stats) {
+                expect(stats.maxSize).toBe(0);
+                expect(stats.size).toBe(0);
+                Media.setPoolSize(4);
+                Media.getPoolStats(function (stats) {
+                    expect(stats.maxSize).toBe(4);
+                    expect(stats.size).not.toBeGreaterThan(stats.maxSize);
+                    expect(stats.hitRate).not.toBeLessThan(0);
+                    done();
+                }, fail);
+            }, fail);
+        });
+
+        it("media.spec.58 should load a sample and play it without errors", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                sample = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error loading sample ' + WAV_FILE, context), null, null, { sample: true });
+            var play = function () {
+                if (!sample._sampleReady) {
+                    setTimeout(play, 100);
+                    return;
+                }
+                sample.setVolume(0.5);
+                sample.play();
+                // sample playback reports no status, only errors
+                setTimeout(function () {
+                    if (context.done) return;
+                    sample.release();
+                    context.done = true;
+                    done();
+                }, 500);
+            };
+            play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.59 should serve a replayed remote source from the disk cache", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this;
+            var fail = function (message) {
+                return failed.bind(null, done, message, context);
+            };
+            var play = function (url, next) {
+                var media = new Media(url, function () {
+                    media.release();
+                    next();
+                }, fail('new Media - Error playing ' + url));
+                media.play();
+            };
+
+            // tests/plugin.xml sets MediaCacheSize and adds a loopback server serving the bundled WAV
+            cordova.exec(function (url) {
+                play(url, function () {
+                    Media.getCacheStats(function (before) {
+                        play(url, function () {
+                            Media.getCacheStats(function (after) {
+                                expect(after.hits).toBeGreaterThan(before.hits);
+                                expect(after.bytesSaved).toBeGreaterThan(before.bytesSaved);
+                                expect(after.size).not.toBeGreaterThan(after.budget);
+                                done();
+                            }, fail('Media.getCacheStats - Error getting statistics'));
+                        });
+                    }, fail('Media.getCacheStats - Error getting statistics'));
+                });
+            }, fail('MediaTestServer.start - Error starting the test server'), 'MediaTestServer', 'start', ['www/media-tests/tone.wav']);
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.60 should cache a clip decoded by a mixer voice and empty the PCM cache on clear", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this;
+            var fail = function (message) {
+                return failed.bind(null, done, message, context);
+            };
+            var media = new Media(WAV_FILE, function () {
+                // played from start to end, so the decoder handed the clip to the cache
+                Media.getPcmCacheStats(function (played) {
+                    expect(played.entries).toBeGreaterThan(0);
+                    media.release();
+                    Media.clearPcmCache();
+                    Media.getPcmCacheStats(function (cleared) {
+                        // pinned clips survive a clear
+                        expect(cleared.entries).toBe(cleared.pinned);
+                        expect(cleared.size).not.toBeGreaterThan(cleared.budget);
+                        expect(cleared.pinnedSize).not.toBeGreaterThan(cleared.budget);
+                        done();
+                    }, fail('Media.getPcmCacheStats - Error getting statistics'));
+                }, fail('Media.getPcmCacheStats - Error getting statistics'));
+            }, fail('new Media - Error playing ' + WAV_FILE), null, null, {backend: 'mixer'});
+            Media.getMetrics(function (metrics) {
+                expect(metrics.mixerVoices).toBeGreaterThan(0);
+                media.play();
+            }, fail('Media.getMetrics - Error getting metrics'));
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.61 should end scrubbing at the last target", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this,
+                media = new Media(WAV_FILE);
+            Media.preload([media], function (result) {
+                if (!result.ready) {
+                    failed(done, 'Media.preload - ' + WAV_FILE + ' not ready', context);
+                    return;
+                }
+                media.setScrubbing(true);
+                [200, 600, 1000, 1500].forEach(function (position) {
+                    media.seekTo(position);
+                });
+                media.setScrubbing(false);
+                setTimeout(function () {
+                    media.getCurrentPosition(function (position) {
+                        expect(position).toBeGreaterThan(1.3);
+                        expect(position).toBeLessThan(1.7);
+                        media.release();
+                        done();
+                    }, failed.bind(null, done, 'media.getCurrentPosition - Error getting position', context));
+                }, 500);
+            }, failed.bind(null, done, 'Media.preload - Error preloading', context));
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.62 should not report a local source as stalled", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                media = null;
+            media = new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), function (statusCode) {
+                if (statusCode != Media.MEDIA_RUNNING || context.done) return;
+                expect(media.getStalled()).toBe(false);
+                expect(media.getVariant()).toBe(0);
+                media.release();
+                context.done = true;
+                done();
+            });
+            media.play();
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.63 should restore saved players as Media objects", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            Media.restoreSession(function (entries) {
+                expect(Array.isArray(entries)).toBe(true);
+                entries.forEach(function (entry) {
+                    expect(entry.media instanceof Media).toBe(true);
+                    expect(Media.get(entry.media.id)).toBe(entry.media);
+                    expect(entry.position).not.toBeLessThan(0);
+                    entry.media.release();
+                });
+                done();
+            }, failed.bind(null, done, 'Media.restoreSession - Error restoring', this));
+        });
+
+        it("media.spec.64 should start and pause a group together", function (done) {
+            if (cordova.platformId !== 'android' || !isAudioSupported) {
+                pending();
+            }
+
+            var context = this,
+                members = [],
+                running = 0,
+                paused = 0;
+            var statusChange = function (statusCode) {
+                if (statusCode == Media.MEDIA_RUNNING && ++running == members.length) {
+                    Media.pauseGroup(members);
+                } else if (statusCode == Media.MEDIA_PAUSED && ++paused == members.length && !context.done) {
+                    members.forEach(function (media) {
+                        expect(media.getPaused()).toBe(true);
+                        media.release();
+                    });
+                    context.done = true;
+                    done();
+                }
+            };
+            for (var i = 0; i < 2; i++) {
+                members.push(new Media(WAV_FILE, null, failed.bind(null, done, 'new Media - Error playing ' + WAV_FILE, context), statusChange));
+            }
+            Media.startGroup(members, true);
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
+        it("media.spec.65 should fail to stop a recording that was never started", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            Media.stopRecording('spec65-missing', succeed.bind(null, done, 'Media.stopRecording - Unexpected success', this), function (error) {
+                expect(error).toContain('spec65-missing');
+                done();
+            });
+        });
+
+        it("media.spec.66 should refuse files that are no bank and clips of banks that are not loaded", function (done) {
+            if (cordova.platformId !== 'android') {
+                pending();
+            }
+
+            var context = this;
+            Media.loadBank('spec66', WAV_FILE, succeed.bind(null, done, 'Media.loadBank - Unexpected success', context), function (error) {
+                expect(error).toContain('bank');
+                var media = new Media('bank://spec66/clip', null, function (error) {
+                    if (context.done) return;
+                    expect(error).toBeDefined();
+                    media.release();
+                    context.done = true;
+                    done();
+                });
+                media.play();
+            });
+        }, ACTUAL_PLAYBACK_TEST_TIMEOUT);
+
     });
 };
 
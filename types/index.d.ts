@@ -12,7 +12,8 @@ export declare var Media: {
         mediaSuccess: () => void,
         mediaError?: (error: MediaError) => any,
         mediaStatus?: (status: number) => void,
-        mediaPosition?: (remaining: number) => any): Media;
+        mediaPosition?: (remaining: number) => any,
+        options?: MediaOptions): Media;
         //Media statuses
         MEDIA_NONE: number;
         MEDIA_STARTING: number;
@@ -22,6 +23,53 @@ export declare var Media: {
         MEDIA_STOPPED: number;
         MEDIA_FADING_OUT: number;
         MEDIA_MSG: string[];
+        /** Interval in ms for natively pushed positions, 0 falls back to polling from JS (Android only) */
+        setPositionInterval(milliseconds: number): void;
+        /** Batch native status events for the given window and receive them as one binary message, 0 disables (Android only) */
+        setEventBatching(milliseconds: number): void;
+        /** Maximum number of released native players kept for reuse (Android only) */
+        setPoolSize(size: number): void;
+        /** Wait until the native players are prepared, readyCallback is called once per media */
+        preload(medias: (Media | string)[], readyCallback?: (result: MediaPreloadResult) => void, errorCallback?: (error: any) => void): void;
+        /** Gapless playlist (Android only), play the first entry to start it */
+        setQueue(medias: (Media | string)[]): void;
+        enqueue(media: Media | string, success?: (size: number) => void): void;
+        skip(): void;
+        clearQueue(): void;
+        queueIndex: number;
+        onQueueChange: ((index: number, media: Media) => void) | null;
+        getPoolStats(success: (stats: MediaPoolStats) => void, fail?: (error: any) => void): void;
+        /** Statistics of the on-device cache for remote sources (Android only) */
+        getCacheStats(success: (stats: MediaCacheStats) => void, fail?: (error: any) => void): void;
+        clearCache(): void;
+        /** Statistics of the decoded clip cache of the mixer backend (Android only) */
+        getPcmCacheStats(success: (stats: MediaPcmCacheStats) => void, fail?: (error: any) => void): void;
+        clearPcmCache(): void;
+        /** Metadata of sources read without creating players, cached natively across launches (Android only) */
+        probeMetadata(srcs: string[], success: (results: MediaMetadata[]) => void, fail?: (error: any) => void): void;
+        /** Memory-map a packed bank of clips, played as bank://name/clip (Android only) */
+        loadBank(name: string, path: string, success?: (clips: string[]) => void, fail?: (error: any) => void): void;
+        unloadBank(name: string): void;
+        /** Recreate and prepare the players saved when the app last paused or closed (Android only) */
+        restoreSession(success: (entries: MediaSessionEntry[]) => void, fail?: (error: any) => void): void;
+        /** Delete the saved players without restoring them, so later pauses save again (Android only) */
+        discardSession(): void;
+        /** Waveform peaks of a source decoded natively and cached on disk (Android only) */
+        getPeaks(src: string, buckets: number, success: (peaks: MediaPeaks) => void, fail?: (error: any) => void,
+            progress?: (partial: MediaPeaks) => void, progressInterval?: number): void;
+        /** Stream the microphone as PCM chunks, optionally into a WAV file (Android only), returns the recording id */
+        startRecording(options: MediaRecordingOptions | null, onChunk: (chunk: MediaRecordingChunk) => void,
+            fail?: (error: any) => void): string;
+        stopRecording(id: string, success?: (result: MediaRecordingResult) => void, fail?: (error: any) => void): void;
+        /** Native counters and latency histograms since the last reset (Android only) */
+        getMetrics(success: (metrics: MediaMetrics) => void, fail?: (error: any) => void): void;
+        resetMetrics(): void;
+        /** Start players together once all are prepared, optionally keeping them in step (Android only) */
+        startGroup(medias: (Media | string)[], correctDrift?: boolean): void;
+        pauseGroup(medias: (Media | string)[]): void;
+        seekGroup(medias: (Media | string)[], milliseconds: number): void;
+        /** Apply many player operations with one native call (Android only), success receives one boolean per operation */
+        batch(operations: MediaBatchOperation[], atomic?: boolean, success?: (results: boolean[]) => void, fail?: (results: boolean[]) => void): void;
 };
 /**
  * This plugin provides the ability to play back audio files on a device.
@@ -52,6 +100,12 @@ export interface Media {
     getEnded(): boolean;
     getLoading(): boolean;
     getStopped(): boolean; 
+    /** Percent of a streamed source downloaded (Android only) */
+    getBuffered(): number;
+    /** Whether playback waits for data of a streamed source (Android only) */
+    getStalled(): boolean;
+    /** Index of the playing source, 0 for src, i + 1 for options.variants[i] (Android only) */
+    getVariant(): number;
     getFadeIn(): boolean;
     getFadeOut(): boolean;
     getFadingOut(): boolean;
@@ -64,6 +118,8 @@ export interface Media {
     setFadeVolume(volume: number): void;
     setFadeInOut(): void;
     setFadeTime(seconds: number): void;
+    /** Fade this media out and stop it while fading in and starting another one */
+    crossfade(media: Media, seconds?: number): void;
 
     getMediaId(): string;
     setMediaId(id: string): void;
@@ -90,6 +146,8 @@ export interface Media {
      * @param position Position in milliseconds.
      */
     seekTo(position: number): void;
+    /** Coalesce seeks into fast seeks while a seek bar is dragged, false seeks precisely to the last target (Android only) */
+    setScrubbing(scrubbing: boolean): void;
     /**
      * Set the volume for an audio file.
      * @param volume The volume to set for playback. The value must be within the range of 0.0 to 1.0.
@@ -97,9 +155,180 @@ export interface Media {
     setVolume(volume: number): void;
     
     stop(): void;
+    /** Keep the decoded source in memory while other clips are evicted, pinned clips are capped at the PCM cache budget (Android mixer backend only) */
+    pinPcm(pinned?: boolean, success?: () => void, fail?: (error: string) => void): void;
     id: any;
     src: string;
 }
+export interface MediaOptions {
+    /** Load a short clip into the native SoundPool, play() is fire-and-forget (Android only) */
+    sample?: boolean;
+    /** Lower bitrate versions of a streamed src, best first, switched to when playback keeps stalling (Android only) */
+    variants?: string[];
+    /** Engine of this player instead of the MediaBackend preference (Android only) */
+    backend?: 'mediaplayer' | 'mixer' | 'fake';
+    /** Called when buffering progresses or playback stalls or resumes */
+    bufferingCallback?: (stalled: boolean, bufferedPercent: number) => void;
+    /** Id of an existing native player to attach to */
+    id?: string;
+}
+/** Result of Media.probeMetadata, error is set instead of the values when the source could not be read */
+export interface MediaMetadata {
+    src: string;
+    /** Seconds */
+    duration?: number;
+    /** Bits per second, 0 if unknown */
+    bitrate?: number;
+    channels?: number;
+    sampleRate?: number;
+    error?: string;
+}
+/** A player restored by Media.restoreSession */
+export interface MediaSessionEntry {
+    media: Media;
+    /** Native state the player had when saved */
+    state: number;
+    /** Saved position in seconds */
+    position: number;
+    volume: number;
+}
+export interface MediaRecordingOptions {
+    /** Hz, 44100 by default */
+    sampleRate?: number;
+    /** 1 or 2 */
+    channels?: number;
+    /** Duration of one chunk in ms, 20 by default */
+    chunkMs?: number;
+    /** false sends only the levels of each chunk */
+    pcm?: boolean;
+    /** WAV file written alongside, relative paths are in the app's files directory */
+    file?: string;
+}
+export interface MediaRecordingChunk {
+    id: string;
+    seq: number;
+    /** Chunks not delivered so far because the page was behind */
+    skipped: number;
+    peak: number;
+    rms: number;
+    /** Interleaved 16 bit samples, null when options.pcm is false */
+    pcm: Int16Array | null;
+}
+export interface MediaRecordingResult {
+    file: string | null;
+    /** Seconds */
+    duration: number;
+    chunks: number;
+    skipped: number;
+    /** Chunks lost by the native writer, missing from the file too */
+    overruns: number;
+}
+export interface MediaBatchOperation {
+    /** Native action name, or play, pause, stop, seekTo */
+    action: string;
+    id: Media | string;
+    /** Arguments of the single call without the id */
+    args?: any[];
+}
+export interface MediaPreloadResult {
+    id: string;
+    ready: boolean;
+    duration: number;
+}
+/** Statistics of the native MediaPlayer pool */
+export interface MediaPoolStats {
+    size: number;
+    maxSize: number;
+    hits: number;
+    misses: number;
+    evictions: number;
+    hitRate: number;
+}
+/** Statistics of the on-device cache for remote sources */
+export interface MediaCacheStats {
+    size: number;
+    budget: number;
+    chunks: number;
+    hits: number;
+    misses: number;
+    hitRatio: number;
+    bytesSaved: number;
+    bytesFetched: number;
+}
+/** Statistics of the decoded clip cache */
+export interface MediaPcmCacheStats {
+    size: number;
+    budget: number;
+    entries: number;
+    pinned: number;
+    pinnedSize: number;
+    hits: number;
+    misses: number;
+    evictions: number;
+    hitRatio: number;
+}
+/** Waveform peaks, min, max and rms hold the buckets from index from on, in -1 to 1 */
+export interface MediaPeaks {
+    done: boolean;
+    progress: number;
+    buckets: number;
+    from: number;
+    /** Duration of the source in seconds */
+    duration: number;
+    min: number[];
+    max: number[];
+    rms: number[];
+}
+/** Latency histogram in ms, percentiles are the upper bound of their bucket */
+export interface MediaLatency {
+    count: number;
+    mean: number;
+    max: number;
+    p50: number;
+    p90: number;
+    p99: number;
+    /** Counts per bucket of bucketBounds, the last one holds everything above */
+    buckets: number[];
+}
+/** Native playback metrics since the last reset */
+export interface MediaMetrics {
+    seconds: number;
+    players: number;
+    /** Players whose backend was released while idle, re-prepared on their next use */
+    dormantPlayers: number;
+    /** MediaPlayer instances, held by players or idle in the pool */
+    mediaPlayers: number;
+    /** Players decoding into the software mixer (MediaBackend=mixer) */
+    mixerVoices: number;
+    /** Players on the fake backend (MediaBackend=fake) */
+    fakePlayers: number;
+    /** Players waiting for a phone call or focus loss to end */
+    pausedPlayers: number;
+    playersCreated: number;
+    playersReleased: number;
+    playersDemoted: number;
+    playersRehydrated: number;
+    stalls: number;
+    variantSwitches: number;
+    driftCorrections: number;
+    statusEvents: number;
+    eventsPerSecond: number;
+    messages: number;
+    messagesPerSecond: number;
+    /** Bytes of Java heap in use by the app process */
+    heapUsed: number;
+    /** Open file descriptors of the app process, -1 if unknown */
+    fileDescriptors: number;
+    errors: number;
+    errorsByCode: { [code: string]: number };
+    latency: {
+        load: MediaLatency;
+        prepare: MediaLatency;
+        start: MediaLatency;
+        seek: MediaLatency;
+        bucketBounds: number[];
+    };
+}
 /**
  *  iOS optional parameters for media.play
  *  See https://github.com/apache/cordova-plugin-media#ios-quirks
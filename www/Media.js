@@ -24,6 +24,11 @@ var argscheck = require("cordova/argscheck"),
     exec = require("cordova/exec");
 
 var mediaObjects = {};
+var recorders = {};     // Callbacks of native recordings by id
+var RECORDER_ACK_EVERY = 4; // chunks handled between acknowledgements to the native recorder
+
+// Platforms running the native AudioHandler in src/android
+var isAndroid = cordova.platformId === 'android' || cordova.platformId === 'amazon-fireos';
 
 /**
  * This class provides access to the device media, interfaces to both sound and video
@@ -38,19 +43,42 @@ var mediaObjects = {};
  *                                  statusCallback(int statusCode) - OPTIONAL
  * @param positionCallback      The callback to be called when the file is playing
  *                                  successCallback(int position)
+ * @param options               OPTIONAL, {sample: true} loads a short clip into the native SoundPool (Android only),
+ *                                  play() is then fire-and-forget and reports no status.
+ *                                  {variants: [url, ...]} lower bitrate versions of a streamed src, best first,
+ *                                  switched to natively when playback keeps stalling (Android only).
+ *                                  {bufferingCallback: function(stalled, bufferedPercent)} called on buffering changes.
+ *                                  {id: string} reuses the id of a native player, as done by Media.restoreSession
+ *                                  {backend: 'mediaplayer' | 'mixer' | 'fake'} plays through this engine instead of the
+ *                                  one set by the MediaBackend preference (Android only).
  */
-var Media = function(src, successCallback, errorCallback, statusCallback, positionCallback) {
+var Media = function(src, successCallback, errorCallback, statusCallback, positionCallback, options) {
     argscheck.checkArgs("sFFF", "Media", arguments);
-    this.id = utils.createUUID();
+    this.id = (options && options.id) || utils.createUUID();
     mediaObjects[this.id] = this;
     this.src = src;
     this.successCallback = successCallback;
     this.errorCallback = errorCallback;
     this.statusCallback = statusCallback;
     this.positionCallback = positionCallback;
+    this.bufferingCallback = options && options.bufferingCallback;
     this._duration = 0;
     this._position = 0;
-    exec(null, this.errorCallback, "Media", "create", [this.id, this.src]);
+    this._sample = !!(options && options.sample) && isAndroid;
+    this._sampleReady = false;
+    if (this._sample) {
+        var me = this;
+        exec(function() {
+            me._sampleReady = true;
+        }, this.errorCallback, "Media", "createSample", [this.id, this.src]);
+    } else {
+        var variants = (options && options.variants) || [],
+            backend = options && options.backend,
+            args = [this.id, this.src];
+        if (variants.length || backend) args.push(variants);
+        if (backend) args.push(backend);
+        exec(null, this.errorCallback, "Media", "create", args);
+    }
 
     this._mediaState = 0;
     this._endPosition = 0;
@@ -66,14 +94,27 @@ var Media = function(src, successCallback, errorCallback, statusCallback, positi
     this._forceFadeOut = false;
 	this._fadingOut = false;
     this._mediaId = '0';
+    this._buffered = 0;
+    this._stalled = false;
+    this._variant = 0;
 };
 
 // Media messages
 Media.MEDIA_STATE = 1;
 Media.MEDIA_DURATION = 2;
 Media.MEDIA_POSITION = 3;
+Media.MEDIA_FADE = 4;
+Media.MEDIA_QUEUE = 5;
+Media.MEDIA_BUFFER = 6;
+Media.MEDIA_STALL = 7;
+Media.MEDIA_VARIANT = 8;
 Media.MEDIA_ERROR = 9;
 
+// Values of MEDIA_FADE messages
+Media.FADE_DONE = 0;
+Media.FADE_IN = 1;
+Media.FADE_OUT = 2;
+
 // Media states
 Media.MEDIA_NONE = 0;
 Media.MEDIA_STARTING = 1;
@@ -84,6 +125,274 @@ Media.MEDIA_ENDED = 5;
 Media.MEDIA_FADING_OUT = 6;
 Media.MEDIA_MSG = ["None", "Starting", "Running", "Paused", "Stopped", "Ended", "FadingOut"];
 
+// Fades are computed natively, JS only receives MEDIA_FADE messages when they start and finish
+Media._nativeFade = isAndroid;
+
+// Interval in ms at which native code pushes positions of running players, 0 when JS has to poll
+Media._positionInterval = 0;
+
+/**
+ * Set how often the native side reports positions of running players.
+ * Passing 0 disables native updates and falls back to polling from JS.
+ */
+Media.setPositionInterval = function(milliseconds) {
+    exec(function(interval) {
+        Media._positionInterval = interval;
+    }, null, "Media", "setPositionInterval", [milliseconds]);
+};
+
+/**
+ * Collect native status events for the given window and receive them as one binary message.
+ * Passing 0 sends every event on its own.
+ */
+Media.setEventBatching = function(milliseconds) {
+    exec(null, null, "Media", "setEventBatching", [milliseconds]);
+};
+
+/**
+ * Set how many released native players are kept for reuse (Android only).
+ */
+Media.setPoolSize = function(size) {
+    exec(null, null, "Media", "setPoolSize", [size]);
+};
+
+/**
+ * Get native player pool statistics: size, maxSize, hits, misses, evictions and hitRate.
+ */
+Media.getPoolStats = function(success, fail) {
+    exec(success, fail, "Media", "getPoolStats", []);
+};
+
+/**
+ * Get statistics of the native cache for remote sources (Android only):
+ * size, budget, chunks, hits, misses, hitRatio, bytesSaved and bytesFetched.
+ */
+Media.getCacheStats = function(success, fail) {
+    exec(success, fail, "Media", "getCacheStats", []);
+};
+Media.clearCache = function() {
+    exec(null, null, "Media", "clearCache", []);
+};
+
+/**
+ * Decoded clips kept in memory by the mixer backend (MediaBackend=mixer, Android only).
+ * A new Media of a cached source plays without decoding, pinned sources are never evicted.
+ */
+Media.getPcmCacheStats = function(success, fail) {
+    exec(success, fail, "Media", "getPcmCacheStats", []);
+};
+Media.clearPcmCache = function() {
+    exec(null, null, "Media", "clearPcmCache", []);
+};
+
+/**
+ * Waveform of a source decoded natively (Android only): min, max and RMS per bucket, cached on disk.
+ * When progressInterval (ms) is set, progress receives the buckets decoded so far as { from, min, max, rms }.
+ */
+Media.getPeaks = function(src, buckets, success, fail, progress, progressInterval) {
+    exec(function(result) {
+        if (result.done) {
+            if (success) success(result);
+        } else if (progress) {
+            progress(result);
+        }
+    }, fail, "Media", "getPeaks", [src, buckets, progress ? (progressInterval || 250) : 0]);
+};
+
+/**
+ * Duration, bitrate, channels and sample rate of many sources without creating players (Android only).
+ * Results are indexed natively by path and modification time, so unchanged sources are answered without
+ * opening them again. success receives one { src, duration, bitrate, channels, sampleRate } per src in order,
+ * or { src, error } for a source that could not be read.
+ */
+Media.probeMetadata = function(srcs, success, fail) {
+    exec(success, fail, "Media", "probeMetadata", [srcs]);
+};
+
+/**
+ * Memory-map a packed bank of clips once (Android only), its clips are then played as bank://name/clip
+ * by new Media, Media.createSample and Media.getPeaks without opening a file each.
+ * path is a local file or /android_asset/ path, banks in assets must be stored uncompressed.
+ * success receives the clip names of the bank.
+ */
+Media.loadBank = function(name, path, success, fail) {
+    exec(success, fail, "Media", "loadBank", [name, path]);
+};
+Media.unloadBank = function(name) {
+    exec(null, null, "Media", "unloadBank", [name]);
+};
+
+/**
+ * Players saved natively when the app last paused or closed (Android only), recreated and prepared
+ * at their saved position and volume without starting. success receives [{media, state, position, volume}],
+ * state is the native state the player had, so the app can resume the ones that were playing.
+ */
+Media.restoreSession = function(success, fail) {
+    exec(function(entries) {
+        var restored = entries.map(function(entry) {
+            var media = mediaObjects[entry.id] || new Media(entry.src, null, null, null, null, { id: entry.id });
+            media._position = entry.position;
+            media._volume = entry.volume;
+            return { media: media, state: entry.state, position: entry.position, volume: entry.volume };
+        });
+        if (success) success(restored);
+    }, fail, "Media", "restoreSession", []);
+};
+
+/**
+ * Forget the saved players without restoring them (Android only). Until the app restores or discards
+ * the session of the last launch, it is kept as it was and not overwritten on pause.
+ */
+Media.discardSession = function() {
+    exec(null, null, "Media", "discardSession", []);
+};
+
+/**
+ * Stream the microphone natively (Android only), asking for the permission if needed.
+ * options: { sampleRate (44100), channels (1), chunkMs (20), pcm (true), file }
+ * onChunk receives { id, seq, skipped, peak, rms, pcm } every chunkMs, pcm is an Int16Array of
+ * interleaved samples or null when options.pcm is false, for level meters.
+ * With options.file every chunk is also written to that WAV file, relative paths are in the app's files directory.
+ * Chunks the page is too slow to take are left out of onChunk and counted in skipped, never out of the file.
+ * Returns the recording id for Media.stopRecording.
+ */
+Media.startRecording = function(options, onChunk, fail) {
+    var id = utils.createUUID();
+    recorders[id] = { onChunk: onChunk, acked: -1 };
+    exec(null, function(err) {
+        delete recorders[id];
+        if (fail) fail(err);
+    }, "Media", "startRecording", [id, options || {}]);
+    return id;
+};
+
+/**
+ * success receives { file, duration, chunks, skipped, overruns }, overruns counts chunks lost by the native writer.
+ */
+Media.stopRecording = function(id, success, fail) {
+    delete recorders[id];
+    exec(success, fail, "Media", "stopRecording", [id]);
+};
+
+/**
+ * Native counters and latency histograms (Android only), for shipping to telemetry.
+ * Latencies are in ms: load (opening a source), prepare (create to prepared), start (play to started), seek.
+ */
+Media.getMetrics = function(success, fail) {
+    exec(success, fail, "Media", "getMetrics", []);
+};
+Media.resetMetrics = function() {
+    exec(null, null, "Media", "resetMetrics", []);
+};
+
+// Accept Media objects or their ids in static functions
+function mediaIds(medias) {
+    return medias.map(function(media) {
+        return typeof media === 'string' ? media : media.id;
+    });
+}
+
+/**
+ * Wait until the native players of several Media objects are prepared, so play() starts without prepare latency.
+ *
+ * @param medias        Array of Media objects or ids
+ * @param readyCallback Called once per media with {id, ready, duration}
+ * @param errorCallback OPTIONAL
+ */
+Media.preload = function(medias, readyCallback, errorCallback) {
+    var ids = mediaIds(medias);
+    exec(function(result) {
+        var media = mediaObjects[result.id];
+        if (media && result.ready) {
+            media._duration = result.duration;
+        }
+        if (readyCallback) readyCallback(result);
+    }, errorCallback, "Media", "preload", [ids]);
+};
+
+/**
+ * Gapless playlist (Android only). Entries are Media objects or ids, each one starts natively
+ * the moment the previous one ends. Play the first entry to start the queue.
+ * Media.onQueueChange(index, media) is called when the current entry changes.
+ */
+Media.queueIndex = 0;
+Media.onQueueChange = null;
+
+Media.setQueue = function(medias) {
+    Media.queueIndex = 0;
+    exec(null, null, "Media", "setQueue", [mediaIds(medias)]);
+};
+Media.enqueue = function(media, success) {
+    exec(success, null, "Media", "enqueue", mediaIds([media]));
+};
+Media.skip = function() {
+    exec(null, null, "Media", "skip", []);
+};
+Media.clearQueue = function() {
+    Media.queueIndex = 0;
+    exec(null, null, "Media", "clear", []);
+};
+
+// Short names accepted in Media.batch operations
+var batchActions = {
+    play: "startPlayingAudio",
+    pause: "pausePlayingAudio",
+    stop: "stopPlayingAudio",
+    seekTo: "seekToAudio"
+};
+
+/**
+ * Players kept in step, such as the stems of one song (Android only). Entries are Media objects or ids.
+ * startGroup waits until every member is prepared and starts them all at once, with correctDrift
+ * a member drifting from the first one while they play is sought back in line.
+ * A playing group is sought by pausing, seeking and starting all members together again.
+ */
+Media.startGroup = function(medias, correctDrift) {
+    exec(null, null, "Media", "startGroup", [mediaIds(medias), !!correctDrift]);
+};
+Media.pauseGroup = function(medias) {
+    exec(null, null, "Media", "pauseGroup", [mediaIds(medias)]);
+};
+Media.seekGroup = function(medias, milliseconds) {
+    exec(null, null, "Media", "seekGroup", [mediaIds(medias), milliseconds]);
+};
+
+/**
+ * Apply many player operations with a single native call (Android only), in order.
+ * Each operation is {action, id, args}: action is a native action name or play, pause, stop, seekTo,
+ * id a Media object or its id, args the arguments of the single call without the id.
+ * The source of play and create operations defaults to the src of the Media object.
+ *
+ * @param operations    Array of operations
+ * @param atomic        OPTIONAL apply nothing unless every operation can be applied
+ * @param success       OPTIONAL called with one boolean per operation
+ * @param fail          OPTIONAL called with the same array when an atomic batch was rejected
+ */
+Media.batch = function(operations, atomic, success, fail) {
+    var ops = operations.map(function(op) {
+        var action = batchActions[op.action] || op.action;
+        var id = mediaIds([op.id])[0];
+        var args = op.args || [];
+        var media = mediaObjects[id];
+        if ((action == "startPlayingAudio" || action == "create") && !args.length && media) {
+            args = [media.src];
+        }
+        return { action: action, id: id, args: args };
+    });
+    exec(function(results) {
+        ops.forEach(function(op, i) {
+            var media = mediaObjects[op.id];
+            if (!results[i] || !media) return;
+            if (op.action == "setVolume") {
+                media._volume = op.args[0];
+            } else if (op.action == "release") {
+                delete mediaObjects[op.id];
+            }
+        });
+        if (success) success(results);
+    }, fail, "Media", "batch", [ops, !!atomic]);
+};
+
 // "static" function to return existing objs.
 Media.get = function(id) {
 	return mediaObjects[id];
@@ -108,6 +417,10 @@ Media.running = function() {
  */
 Media.prototype.play = function(options) {
 	var me = this;
+	if (me._sample) {
+		exec(null, null, "Media", "playSample", [this.id]);
+		return;
+	}
 	exec(null, null, "Media", "startPlayingAudio", [this.id, this.src, options]);
 	me.autoUpdatePosition();
 };
@@ -117,9 +430,9 @@ Media.prototype.play = function(options) {
  */
 Media.prototype.stop = function() {
     var me = this;
-    me.setForceFadeOut(false);
+    //when stoped, disable fading out, native fades are cleared by stopPlayingAudio
+    me._forceFadeOut = false;
     me.setFadingOut(false);
-    //when stoped, disable fading out
 	exec(
 		function() {
 			me._position = 0;
@@ -141,6 +454,14 @@ Media.prototype.seekTo = function(milliseconds) {
     }, this.errorCallback, "Media", "seekToAudio", [this.id, milliseconds]);
 };
 
+/**
+ * Scrub mode for dragging a seek bar (Android only). While scrubbing, seekTo calls are coalesced into
+ * fast seeks and positions are reported when a seek completes. Leaving it seeks precisely to the last target.
+ */
+Media.prototype.setScrubbing = function(scrubbing) {
+    exec(null, null, "Media", "setScrubbing", [this.id, !!scrubbing]);
+};
+
 /**
  * Pause playing audio file.
  */
@@ -202,6 +523,21 @@ Media.prototype.getStopped = function() {
     var me = this;
     return me._stopped;
 };
+
+/**
+ * Buffering of streamed sources: percent downloaded, whether playback waits for data,
+ * and which variant plays (0 for src, 1 for the first of options.variants...).
+ */
+Media.prototype.getBuffered = function() {
+    return this._buffered;
+};
+Media.prototype.getStalled = function() {
+    return this._stalled;
+};
+Media.prototype.getVariant = function() {
+    return this._variant;
+};
+
 /**
  * Fade timings
  */
@@ -211,7 +547,9 @@ Media.prototype.getFadeIn = function() {
 };
 Media.prototype.setFadeIn = function(value) {
     var me = this;
-    return me._fadeIn = value;
+    me._fadeIn = value;
+    me.updateNativeFade();
+    return value;
 };
 Media.prototype.getFadeOut = function() {
     var me = this;
@@ -219,16 +557,48 @@ Media.prototype.getFadeOut = function() {
 };
 Media.prototype.setFadeOut = function(value) {
     var me = this;
-    return me._fadeOut = value;
+    me._fadeOut = value;
+    me.updateNativeFade();
+    return value;
 };
 Media.prototype.setForceFadeOut = function(value) {
     var me = this;
     me._forceFadeOut = value;
+    if (Media._nativeFade) {
+        exec(null, null, "Media", "fadeOut", [this.id, value ? me._fadeTime : 0]);
+    }
     return me._endPosition = me._position + me._fadeTime;
 };
 Media.prototype.setFadeTime = function(value) {
 	var me = this;
-	return (me._fadeTime = value);
+	me._fadeTime = value;
+	me.updateNativeFade();
+	return value;
+};
+Media.prototype.updateNativeFade = function() {
+    var me = this;
+    if (!Media._nativeFade) return;
+    exec(null, null, "Media", "setFade", [this.id, !!me._fadeIn, !!me._fadeOut, me._fadeTime]);
+};
+
+/**
+ * Fade out this media and stop it while fading in and starting another one.
+ *
+ * @param media         The Media object to fade in
+ * @param seconds       Length of the crossfade, defaults to the fade time
+ */
+Media.prototype.crossfade = function(media, seconds) {
+    var me = this;
+    var fadeTime = seconds || me._fadeTime;
+    if (Media._nativeFade) {
+        exec(null, null, "Media", "crossfade", [this.id, media.id, fadeTime]);
+        return;
+    }
+    me.setFadeTime(fadeTime);
+    me.setForceFadeOut(true);
+    media.setFadeTime(fadeTime);
+    media.setFadeIn(true);
+    media.play();
 };
 Media.prototype.getFadingOut = function() {
 	var me = this;
@@ -276,6 +646,14 @@ Media.prototype.release = function() {
     }, this.errorCallback, "Media", "release", [this.id]);
 };
 
+/**
+ * Keep the decoded source of this media in the PCM cache while other clips are evicted (mixer backend only).
+ * Pinned clips together are capped at the cache budget, fail is called if this one does not fit.
+ */
+Media.prototype.pinPcm = function(pinned, success, fail) {
+    exec(success, fail, "Media", "pinPcm", [this.id, pinned !== false]);
+};
+
 /**
  * Adjust the volume.
  */
@@ -310,6 +688,8 @@ Media.prototype.setRate = function(rate) {
  */
 Media.prototype.autoUpdatePosition = function() {
     var me = this;
+    //positions are pushed natively, fade zone is checked when they arrive
+    if (Media._positionInterval > 0) return;
     if (me._mediaState == Media.MEDIA_RUNNING) {
     	me.updatePosition();
         setTimeout(()=> me.autoUpdatePosition(), 150);
@@ -343,6 +723,7 @@ Media.prototype.doFadeIn = function() {
 }
 Media.prototype.checkFadeZone = function() {
     var me = this;
+    if (Media._nativeFade) return;
 
     const forcedFade = me._forceFadeOut;
     const fadeInZone = me._fadeIn && me._position < me._fadeTime;
@@ -401,6 +782,34 @@ Media.onStatus = function(id, msgType, value) {
                 }
                 break;
 
+            case Media.MEDIA_FADE:
+                media._fadingOut = value == Media.FADE_OUT;
+                if (value == Media.FADE_DONE) media._forceFadeOut = false;
+                if (value == Media.FADE_OUT && media.statusCallback) {
+                    media.statusCallback(Media.MEDIA_FADING_OUT);
+                }
+                break;
+
+            case Media.MEDIA_QUEUE:
+                Media.queueIndex = value;
+                if (Media.onQueueChange) {
+                    Media.onQueueChange(value, media);
+                }
+                break;
+
+            case Media.MEDIA_BUFFER:
+            case Media.MEDIA_STALL:
+                if (msgType == Media.MEDIA_BUFFER) media._buffered = value;
+                else media._stalled = value == 1;
+                if (media.bufferingCallback) {
+                    media.bufferingCallback(media._stalled, media._buffered);
+                }
+                break;
+
+            case Media.MEDIA_VARIANT:
+                media._variant = value;
+                break;
+
             case Media.MEDIA_POSITION:
                 media._position = Number(value);
 				if (media.positionCallback) {
@@ -420,9 +829,85 @@ Media.onStatus = function(id, msgType, value) {
 
 module.exports = Media;
 
+/**
+ * Decode a batch of status events sent by StatusBatch.java.
+ * PRIVATE
+ *
+ * Layout (little endian): u8 version, u16 players,
+ * per player: u8 id length, id bytes, u16 events, per event: u8 msgType, f32 value
+ */
+function decodeStatusBatch(buffer) {
+    var view = new DataView(buffer);
+    var offset = 0;
+    if (view.getUint8(offset) !== 1) {
+        throw new Error('Unknown media status batch version ' + view.getUint8(offset));
+    }
+    var players = view.getUint16(offset + 1, true);
+    offset += 3;
+    for (var p = 0; p < players; p++) {
+        var idLength = view.getUint8(offset);
+        var id = String.fromCharCode.apply(null, new Uint8Array(buffer, offset + 1, idLength));
+        var events = view.getUint16(offset + 1 + idLength, true);
+        offset += 3 + idLength;
+        for (var e = 0; e < events; e++) {
+            var msgType = view.getUint8(offset);
+            var value = view.getFloat32(offset + 1, true);
+            offset += 5;
+            Media.onStatus(id, msgType, value);
+            if (msgType == Media.MEDIA_POSITION && mediaObjects[id]) {
+                mediaObjects[id].checkFadeZone();
+            }
+        }
+    }
+}
+
+/**
+ * Decode a microphone chunk sent by AudioRecorder.java and acknowledge handled chunks.
+ * PRIVATE
+ *
+ * Layout (little endian): u8 kind (2), u8 id length, id bytes, u32 seq, u32 skipped, f32 peak, f32 rms, s16 samples
+ */
+function decodeRecorderChunk(buffer) {
+    var view = new DataView(buffer);
+    var idLength = view.getUint8(1);
+    var id = String.fromCharCode.apply(null, new Uint8Array(buffer, 2, idLength));
+    var recorder = recorders[id];
+    if (!recorder) return;
+    var offset = 2 + idLength;
+    var pcmBytes = buffer.byteLength - offset - 16;
+    var chunk = {
+        id: id,
+        seq: view.getUint32(offset, true),
+        skipped: view.getUint32(offset + 4, true),
+        peak: view.getFloat32(offset + 8, true),
+        rms: view.getFloat32(offset + 12, true),
+        // copied, the samples start at an odd offset for odd id lengths
+        pcm: pcmBytes > 0 ? new Int16Array(buffer.slice(offset + 16)) : null
+    };
+    if (recorder.onChunk) recorder.onChunk(chunk);
+    if (chunk.seq - recorder.acked >= RECORDER_ACK_EVERY) {
+        recorder.acked = chunk.seq;
+        exec(null, null, "Media", "ackRecording", [id, chunk.seq]);
+    }
+}
+
 function onMessageFromNative(msg) {
-    if (msg.action == 'status') {
+    if (msg instanceof ArrayBuffer) {
+        if (new Uint8Array(msg, 0, 1)[0] === 2) {
+            decodeRecorderChunk(msg);
+        } else {
+            decodeStatusBatch(msg);
+        }
+    } else if (msg.action == 'status') {
         Media.onStatus(msg.status.id, msg.status.msgType, msg.status.value);
+    } else if (msg.action == 'positions') {
+        Object.keys(msg.positions).forEach(function(id) {
+            Media.onStatus(id, Media.MEDIA_POSITION, msg.positions[id]);
+            var media = mediaObjects[id];
+            if (media) media.checkFadeZone();
+        });
+    } else if (msg.action == 'positionInterval') {
+        Media._positionInterval = msg.positionInterval;
     } else {
         throw new Error('Unknown media action' + msg.action);
     }